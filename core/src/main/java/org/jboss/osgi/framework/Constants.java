@@ -47,4 +47,37 @@ public interface Constants extends org.osgi.framework.Constants {
 
     /** A list of URLs to bundles that get installed and started on framework startup */
     String PROPERTY_AUTO_START_URLS = "org.jboss.osgi.auto.start";
-}
\ No newline at end of file
+
+    /** A comma separated list of service property keys that are indexed for filtered service lookups */
+    String PROPERTY_SERVICE_INDEXED_PROPERTIES = "org.jboss.osgi.framework.service.indexedProperties";
+
+    /** The maximum number of parsed filters that are cached. A value of 0 disables the cache. System property only */
+    String PROPERTY_FILTER_CACHE_SIZE = "org.jboss.osgi.framework.filter.cacheSize";
+
+    /** The number of threads that deliver asynchronous bundle events in parallel. The default of 0 uses the single framework events thread */
+    String PROPERTY_BUNDLE_EVENT_THREADS = "org.jboss.osgi.framework.events.bundleThreads";
+
+    /** The time in milliseconds above which a synchronous listener or hook call is reported as slow. The default of 0 disables reporting */
+    String PROPERTY_SLOW_SYNCHRONOUS_LISTENER_THRESHOLD = "org.jboss.osgi.framework.events.slowSyncThreshold";
+
+    /** The time in milliseconds above which an asynchronous listener call is reported as slow. The default of 0 disables reporting */
+    String PROPERTY_SLOW_ASYNCHRONOUS_LISTENER_THRESHOLD = "org.jboss.osgi.framework.events.slowAsyncThreshold";
+
+    /** Enables the recording of lock wait and hold times. The default is false */
+    String PROPERTY_LOCK_PROFILING = "org.jboss.osgi.framework.locks.profiling";
+
+    /** The interval in milliseconds at which the lock statistics are logged when profiling is enabled. A value of 0 disables logging */
+    String PROPERTY_LOCK_DUMP_INTERVAL = "org.jboss.osgi.framework.locks.dumpInterval";
+
+    /** The number of threads that resolve independent parts of a resolve request concurrently. The default of 0 resolves serially */
+    String PROPERTY_RESOLVER_THREADS = "org.jboss.osgi.framework.resolver.threads";
+
+    /** Set to true to store the wiring on framework shutdown and reuse it on the next startup. The default is false */
+    String PROPERTY_RESOLUTION_CACHE = "org.jboss.osgi.framework.resolver.cache";
+
+    /** Set to true to store woven classes in the bundle storage area and replay them instead of calling the weaving hooks. The default is false */
+    String PROPERTY_WEAVING_CACHE = "org.jboss.osgi.framework.weaving.cache";
+
+    /** Set to true to serve bundle entries and classes from a memory mapping of the stored bundle file instead of the VFS. The default is false */
+    String PROPERTY_MAPPED_CONTENT = "org.jboss.osgi.framework.content.mapped";
+}
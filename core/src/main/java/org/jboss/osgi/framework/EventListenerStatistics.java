@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework;
+
+import java.util.List;
+
+/**
+ * Call counts and latencies of the event listeners and hooks called by the framework.
+ *
+ * An instance of this interface is registered as a service by the system bundle.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public interface EventListenerStatistics {
+
+    /**
+     * Get the statistics of every listener and hook that was called.
+     */
+    List<Entry> getEntries();
+
+    /**
+     * The threshold in milliseconds above which a synchronous callback is reported as slow. A value of 0 disables reporting.
+     */
+    long getSynchronousThreshold();
+
+    /**
+     * The threshold in milliseconds above which an asynchronous callback is reported as slow. A value of 0 disables reporting.
+     */
+    long getAsynchronousThreshold();
+
+    /**
+     * Discard all statistics.
+     */
+    void reset();
+
+    /**
+     * Get the upper bounds in microseconds of the latency histogram buckets. The last bucket is unbounded.
+     *
+     * @return A copy of the bucket bounds
+     */
+    long[] getLatencyBucketBounds();
+
+    /**
+     * The statistics of the listeners or hooks of a given class registered by a given bundle.
+     */
+    interface Entry {
+
+        /** The kind of callback, like BundleListener or EventListenerHook */
+        String getKind();
+
+        long getBundleId();
+
+        String getSymbolicName();
+
+        String getListenerClass();
+
+        long getCallCount();
+
+        long getSlowCallCount();
+
+        long getTotalNanos();
+
+        long getMaxNanos();
+
+        /** The number of calls per bucket of {@link EventListenerStatistics#getLatencyBucketBounds()} */
+        long[] getLatencyHistogram();
+    }
+}
@@ -230,4 +230,8 @@ public interface FrameworkLogger extends BasicLogger {
     @LogMessage(level = INFO)
     @Message(id = 11043, value = "Bundle refreshed: %s")
     void infoBundleRefreshed(Bundle bundle);
+
+    @LogMessage(level = INFO)
+    @Message(id = 11044, value = "Lock statistics:%n%s")
+    void infoLockStatistics(String dump);
 }
@@ -319,4 +319,10 @@ public interface FrameworkMessages {
 
     @Message(id = 11287, value = "Illegal dynamic import statement generated by weaving hook: %s")
     IllegalArgumentException illegalArgumentDynamicWeavingImport(@Cause Throwable cause, String importSpec);
+
+    @Message(id = 11288, value = "Slow %s [%s] took %d ms, the threshold is %d ms")
+    TimeoutException slowEventListener(String kind, String className, long millis, long threshold);
+
+    @Message(id = 11289, value = "Deadlock detected, failing %s: %s")
+    LockException lockDeadlockDetected(LockContext context, String cycle);
 }
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework;
+
+import java.util.List;
+
+import org.jboss.osgi.framework.spi.LockManager.Method;
+
+/**
+ * Wait and hold times of the locks obtained through the {@link org.jboss.osgi.framework.spi.LockManager}.
+ *
+ * An instance of this interface is registered as a service by the system bundle when lock profiling is enabled.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public interface LockStatistics {
+
+    /** The upper bounds in microseconds of the time histogram buckets. The last bucket is unbounded */
+    long[] TIME_BUCKET_BOUNDS = new long[] { 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L };
+
+    /**
+     * Get the statistics per lock method and item type.
+     */
+    List<Entry> getEntries();
+
+    /**
+     * Get the lock contexts that are currently held.
+     */
+    List<Holder> getCurrentHolders();
+
+    /**
+     * Get a human readable report of the statistics and the current holders with their thread stacks.
+     */
+    String dump();
+
+    /**
+     * Discard all statistics.
+     */
+    void reset();
+
+    /**
+     * The statistics of the locks on items of a given type obtained for a given method.
+     */
+    interface Entry {
+
+        Method getMethod();
+
+        /** The simple class name of the locked item, like HostBundleState or FrameworkWiringLock */
+        String getItemType();
+
+        long getLockCount();
+
+        long getTimeoutCount();
+
+        long getTotalWaitNanos();
+
+        long getMaxWaitNanos();
+
+        /** The number of acquisitions per wait time bucket of {@link LockStatistics#TIME_BUCKET_BOUNDS} */
+        long[] getWaitHistogram();
+
+        long getTotalHoldNanos();
+
+        long getMaxHoldNanos();
+
+        /** The number of releases per hold time bucket of {@link LockStatistics#TIME_BUCKET_BOUNDS} */
+        long[] getHoldHistogram();
+    }
+
+    /**
+     * A lock context that is currently held.
+     */
+    interface Holder {
+
+        Method getMethod();
+
+        List<String> getItems();
+
+        String getThreadName();
+
+        long getThreadId();
+
+        long getHoldNanos();
+
+        /** The current stack of the holding thread */
+        StackTraceElement[] getStackTrace();
+    }
+}
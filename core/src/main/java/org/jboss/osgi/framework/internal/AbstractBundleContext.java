@@ -52,7 +52,6 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.BundleListener;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkListener;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
@@ -469,7 +468,7 @@ abstract class AbstractBundleContext<T extends AbstractBundleState<?>> implement
     @Override
     public Filter createFilter(String filter) throws InvalidSyntaxException {
         asertNotDestroyed();
-        return FrameworkUtil.createFilter(filter);
+        return FilterCache.getInstance().createFilter(filter);
     }
 
     private ServiceManager getServiceManager() {
@@ -253,6 +253,7 @@ abstract class AbstractBundleState<R extends BundleStateRevision> extends Abstra
         }
 
         bundleState.set(state);
+        getBundleManager().bundleStateChanged(this);
 
         // Fire the bundle event
         if (frameworkActive && eventType != 0) {
@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.framework.internal.FrameworkEventsImpl.BundleListenerRegistration;
+import org.jboss.osgi.spi.ConstantsHelper;
+import org.osgi.framework.BundleEvent;
+
+/**
+ * Delivers asynchronous bundle events through a mailbox per {@link org.osgi.framework.BundleListener}.
+ *
+ * Each mailbox is drained by at most one thread of a shared, bounded pool at a time. A listener therefore
+ * sees its events in the order in which they were fired, while independent listeners are called in parallel.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class BundleEventDispatcher {
+
+    // The maximum number of events a mailbox delivers before it yields its thread
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final ExecutorService executorService;
+    private final EventListenerStatisticsImpl statistics;
+    private final ConcurrentMap<BundleListenerRegistration, Mailbox> mailboxes = new ConcurrentHashMap<BundleListenerRegistration, Mailbox>();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final AtomicInteger peakPendingEvents = new AtomicInteger();
+    private final AtomicLong deliveredEvents = new AtomicLong();
+
+    BundleEventDispatcher(ExecutorService executorService, EventListenerStatisticsImpl statistics) {
+        this.executorService = executorService;
+        this.statistics = statistics;
+    }
+
+    static ExecutorService createExecutorService(int threads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable run) {
+                Thread thread = new Thread(run);
+                thread.setName("Framework Bundle Events Thread-" + threadCount.incrementAndGet());
+                return thread;
+            }
+        });
+    }
+
+    ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Create the mailbox for a registered listener.
+     */
+    void addListener(BundleListenerRegistration registration) {
+        mailboxes.putIfAbsent(registration, new Mailbox(registration));
+    }
+
+    /**
+     * Queue the event for the given listener. The event is dropped if the listener is no longer registered.
+     */
+    void deliver(BundleListenerRegistration registration, BundleEvent event) {
+        if (executorService.isShutdown())
+            return;
+
+        Mailbox mailbox = mailboxes.get(registration);
+        if (mailbox != null) {
+            mailbox.post(event);
+        }
+    }
+
+    /**
+     * Close the mailbox of a removed listener. Events that are still queued are dropped.
+     */
+    void removeListener(BundleListenerRegistration registration) {
+        Mailbox mailbox = mailboxes.remove(registration);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    void removeAllListeners() {
+        for (BundleListenerRegistration registration : mailboxes.keySet()) {
+            removeListener(registration);
+        }
+    }
+
+    /**
+     * The number of events that are queued over all mailboxes
+     */
+    int getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * The highest number of events that were queued at the same time
+     */
+    int getPeakPendingEvents() {
+        return peakPendingEvents.get();
+    }
+
+    long getDeliveredEvents() {
+        return deliveredEvents.get();
+    }
+
+    /**
+     * The number of queued events per listener
+     */
+    Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        for (Mailbox mailbox : mailboxes.values()) {
+            result.put(mailbox.registration.toString(), mailbox.depth.get());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public String toString() {
+        return "BundleEventDispatcher[mailboxes=" + mailboxes.size() + ",pending=" + pendingEvents.get() + ",peak=" + peakPendingEvents.get() + "]";
+    }
+
+    private final class Mailbox implements Runnable {
+
+        private final BundleListenerRegistration registration;
+        private final Queue<BundleEvent> events = new ConcurrentLinkedQueue<BundleEvent>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Mailbox(BundleListenerRegistration registration) {
+            this.registration = registration;
+        }
+
+        void close() {
+            closed = true;
+            schedule();
+        }
+
+        void post(BundleEvent event) {
+            events.add(event);
+            depth.incrementAndGet();
+            int pending = pendingEvents.incrementAndGet();
+            int peak = peakPendingEvents.get();
+            while (pending > peak && !peakPendingEvents.compareAndSet(peak, pending)) {
+                peak = peakPendingEvents.get();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executorService.execute(this);
+                } catch (RuntimeException ex) {
+                    // The executor was shut down concurrently
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int count = 0;
+            BundleEvent event;
+            while (count++ < MAX_BATCH_SIZE && (event = events.poll()) != null) {
+                depth.decrementAndGet();
+                pendingEvents.decrementAndGet();
+
+                // Drop the events of a listener that was removed after the event was queued
+                if (closed)
+                    continue;
+
+                long start = System.nanoTime();
+                try {
+                    registration.getListener().bundleChanged(event);
+                    deliveredEvents.incrementAndGet();
+                } catch (Throwable th) {
+                    LOGGER.warnErrorWhileFiringBundleEvent(th, ConstantsHelper.bundleEvent(event.getType()), event.getBundle());
+                } finally {
+                    statistics.record(registration.getStats(statistics), registration.getBundle(), start, false);
+                }
+            }
+            scheduled.set(false);
+
+            // Reschedule if events were posted concurrently or the batch was exhausted
+            if (events.isEmpty() == false) {
+                schedule();
+            }
+        }
+    }
+}
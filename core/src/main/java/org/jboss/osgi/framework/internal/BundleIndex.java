@@ -0,0 +1,275 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+/**
+ * Indexes the bundles that have a revision installed in the {@link IndexedEnvironment}
+ * by location, symbolic name and state.
+ *
+ * Mutations are serialized on the index, queries read the concurrent maps without locking.
+ * A state query filters the candidates against the live bundle state, which removes bundles
+ * that have already left a state. A bundle is only found in its new state once the change
+ * has been reported through {@link #stateChanged(XBundle)}, which happens right after the
+ * bundle state is set. A concurrent state query may therefore miss a bundle that is in
+ * the middle of a state transition.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class BundleIndex {
+
+    // Revisions of the same name sorted by descending version, then ascending bundle id
+    static final Comparator<XBundleRevision> VERSION_ORDER = new Comparator<XBundleRevision>() {
+        @Override
+        public int compare(XBundleRevision r1, XBundleRevision r2) {
+            Version v1 = r1.getVersion() != null ? r1.getVersion() : Version.emptyVersion;
+            Version v2 = r2.getVersion() != null ? r2.getVersion() : Version.emptyVersion;
+            int result = v2.compareTo(v1);
+            if (result == 0) {
+                long id1 = r1.getBundle().getBundleId();
+                long id2 = r2.getBundle().getBundleId();
+                result = id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+            return result;
+        }
+    };
+
+    private static final int[] STATES = new int[] { Bundle.UNINSTALLED, Bundle.INSTALLED, Bundle.RESOLVED, Bundle.STARTING, Bundle.STOPPING, Bundle.ACTIVE };
+
+    private final Map<XBundle, Integer> revisionCounts = new ConcurrentHashMap<XBundle, Integer>();
+    private final Map<String, XBundle> locationIndex = new ConcurrentHashMap<String, XBundle>();
+    private final Map<XBundle, String> bundleLocations = new HashMap<XBundle, String>();
+    private final Map<String, List<XBundleRevision>> nameIndex = new ConcurrentHashMap<String, List<XBundleRevision>>();
+    private volatile List<XBundleRevision> unnamedRevisions = Collections.emptyList();
+    private final Map<XBundle, Integer> recordedStates = new ConcurrentHashMap<XBundle, Integer>();
+    private final List<Set<XBundle>> stateIndex = new ArrayList<Set<XBundle>>();
+    private final Set<XBundle> untrackedBundles = Collections.newSetFromMap(new ConcurrentHashMap<XBundle, Boolean>());
+    private final AtomicLong generation = new AtomicLong();
+
+    BundleIndex() {
+        for (int i = 0; i < STATES.length; i++) {
+            stateIndex.add(Collections.newSetFromMap(new ConcurrentHashMap<XBundle, Boolean>()));
+        }
+    }
+
+    synchronized void addRevision(XBundleRevision brev) {
+        XBundle bundle = brev.getBundle();
+        if (bundle == null)
+            return;
+
+        generation.incrementAndGet();
+        String symbolicName = getIndexName(brev);
+        if (symbolicName != null) {
+            List<XBundleRevision> revisions = nameIndex.get(symbolicName);
+            List<XBundleRevision> sorted = new ArrayList<XBundleRevision>(revisions != null ? revisions : Collections.<XBundleRevision>emptyList());
+            if (!sorted.contains(brev)) {
+                sorted.add(brev);
+                Collections.sort(sorted, VERSION_ORDER);
+                nameIndex.put(symbolicName, Collections.unmodifiableList(sorted));
+            }
+        } else if (!unnamedRevisions.contains(brev)) {
+            List<XBundleRevision> sorted = new ArrayList<XBundleRevision>(unnamedRevisions);
+            sorted.add(brev);
+            Collections.sort(sorted, VERSION_ORDER);
+            unnamedRevisions = Collections.unmodifiableList(sorted);
+        }
+
+        Integer count = revisionCounts.get(bundle);
+        revisionCounts.put(bundle, count != null ? count + 1 : 1);
+        if (count == null) {
+            String location = getLocation(brev);
+            if (location != null && !locationIndex.containsKey(location)) {
+                locationIndex.put(location, bundle);
+                bundleLocations.put(bundle, location);
+            }
+            // Only the framework's own bundles report their state changes
+            if (bundle instanceof AbstractBundleState) {
+                recordState(bundle);
+            } else {
+                untrackedBundles.add(bundle);
+            }
+        }
+    }
+
+    synchronized void removeRevision(XBundleRevision brev) {
+        XBundle bundle = brev.getBundle();
+        if (bundle == null)
+            return;
+
+        generation.incrementAndGet();
+        String symbolicName = getIndexName(brev);
+        List<XBundleRevision> revisions = symbolicName != null ? nameIndex.get(symbolicName) : null;
+        if (revisions != null && revisions.contains(brev)) {
+            List<XBundleRevision> sorted = new ArrayList<XBundleRevision>(revisions);
+            sorted.remove(brev);
+            if (sorted.isEmpty()) {
+                nameIndex.remove(symbolicName);
+            } else {
+                nameIndex.put(symbolicName, Collections.unmodifiableList(sorted));
+            }
+        } else if (symbolicName == null && unnamedRevisions.contains(brev)) {
+            List<XBundleRevision> sorted = new ArrayList<XBundleRevision>(unnamedRevisions);
+            sorted.remove(brev);
+            unnamedRevisions = Collections.unmodifiableList(sorted);
+        }
+
+        Integer count = revisionCounts.get(bundle);
+        if (count == null)
+            return;
+
+        if (count > 1) {
+            revisionCounts.put(bundle, count - 1);
+        } else {
+            revisionCounts.remove(bundle);
+            String location = bundleLocations.remove(bundle);
+            if (location != null) {
+                locationIndex.remove(location);
+            }
+            untrackedBundles.remove(bundle);
+            Integer state = recordedStates.remove(bundle);
+            if (state != null) {
+                stateIndex.get(stateSlot(state)).remove(bundle);
+            }
+        }
+    }
+
+    synchronized void stateChanged(XBundle bundle) {
+        // Install, resolve, refresh and uninstall change the set of available providers
+        int state = bundle.getState();
+        if (state == Bundle.INSTALLED || state == Bundle.RESOLVED || state == Bundle.UNINSTALLED) {
+            generation.incrementAndGet();
+        }
+        if (revisionCounts.containsKey(bundle) && !untrackedBundles.contains(bundle)) {
+            recordState(bundle);
+        }
+    }
+
+    /**
+     * A counter that changes whenever a bundle revision is added or removed,
+     * or a bundle is installed, resolved, unresolved or uninstalled.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    Set<XBundle> getBundles(Integer states) {
+        Set<XBundle> result = new HashSet<XBundle>();
+        if (states == null) {
+            result.addAll(revisionCounts.keySet());
+            return result;
+        }
+        int mask = states.intValue();
+        for (int i = 0; i < STATES.length; i++) {
+            if ((mask & STATES[i]) != 0) {
+                addMatching(result, stateIndex.get(i), mask);
+            }
+        }
+        addMatching(result, untrackedBundles, mask);
+        return result;
+    }
+
+    XBundle getBundleByLocation(String location) {
+        return locationIndex.get(location);
+    }
+
+    Set<XBundle> getBundles(String symbolicName, VersionRange versionRange) {
+        Set<XBundle> result = new LinkedHashSet<XBundle>();
+        if (symbolicName == null) {
+            List<XBundleRevision> revisions = new ArrayList<XBundleRevision>(unnamedRevisions);
+            for (List<XBundleRevision> aux : nameIndex.values()) {
+                revisions.addAll(aux);
+            }
+            Collections.sort(revisions, VERSION_ORDER);
+            addMatching(result, revisions, null, versionRange);
+        } else {
+            List<XBundleRevision> revisions = nameIndex.get(symbolicName);
+            if (revisions != null) {
+                addMatching(result, revisions, symbolicName, versionRange);
+            }
+        }
+        return result;
+    }
+
+    private void addMatching(Set<XBundle> result, List<XBundleRevision> revisions, String symbolicName, VersionRange versionRange) {
+        for (XBundleRevision brev : revisions) {
+            XBundle bundle = brev.getBundle();
+            if (symbolicName == null || symbolicName.equals(bundle.getSymbolicName())) {
+                if (versionRange == null || versionRange.includes(bundle.getVersion())) {
+                    result.add(bundle);
+                }
+            }
+        }
+    }
+
+    private void addMatching(Set<XBundle> result, Set<XBundle> candidates, int mask) {
+        for (XBundle bundle : candidates) {
+            if ((bundle.getState() & mask) != 0) {
+                result.add(bundle);
+            }
+        }
+    }
+
+    private void recordState(XBundle bundle) {
+        int state = bundle.getState();
+        Integer previous = recordedStates.put(bundle, state);
+        if (previous != null && previous.intValue() != state) {
+            stateIndex.get(stateSlot(previous)).remove(bundle);
+        }
+        stateIndex.get(stateSlot(state)).add(bundle);
+    }
+
+    // The bundle states are single bits from UNINSTALLED (0x01) to ACTIVE (0x20)
+    private static int stateSlot(int state) {
+        return Integer.numberOfTrailingZeros(state);
+    }
+
+    // The bundle may not yet know about the revision that is being installed
+    private static String getLocation(XBundleRevision brev) {
+        if (brev instanceof BundleStateRevision) {
+            return ((BundleStateRevision) brev).getLocation();
+        }
+        return brev.getBundle().getLocation();
+    }
+
+    private static String getIndexName(XBundleRevision brev) {
+        String symbolicName = brev.getSymbolicName();
+        return symbolicName != null ? symbolicName : brev.getBundle().getSymbolicName();
+    }
+}
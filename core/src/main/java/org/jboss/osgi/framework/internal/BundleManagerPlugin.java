@@ -77,6 +77,7 @@ import org.jboss.osgi.framework.spi.LockManager.LockContext;
 import org.jboss.osgi.framework.spi.LockManager.LockableItem;
 import org.jboss.osgi.framework.spi.LockManager.Method;
 import org.jboss.osgi.framework.spi.ModuleManager;
+import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.metadata.OSGiMetaData;
 import org.jboss.osgi.resolver.XBundle;
@@ -218,10 +219,37 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
         for (Entry<String, Object> entry : properties.entrySet()) {
             LOGGER.debugf(" %s = %s", entry.getKey(), entry.getValue());
         }
+        LockManager lockManager = injectedLockManager.getValue();
+        if (lockManager instanceof LockManagerImpl && Boolean.parseBoolean(String.valueOf(getProperty(Constants.PROPERTY_LOCK_PROFILING)))) {
+            LockProfiler profiler = ((LockManagerImpl) lockManager).enableProfiling();
+            long interval = getLockDumpInterval();
+            if (interval > 0) {
+                profiler.startPeriodicDump(interval);
+            }
+        }
+    }
+
+    private long getLockDumpInterval() {
+        Object value = getProperty(Constants.PROPERTY_LOCK_DUMP_INTERVAL);
+        if (value == null)
+            return 0;
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException ex) {
+            LOGGER.debugf("Invalid value for %s: %s", Constants.PROPERTY_LOCK_DUMP_INTERVAL, value);
+            return 0;
+        }
     }
 
     @Override
     public void stop(StopContext context) {
+        LockManager lockManager = injectedLockManager.getValue();
+        if (lockManager instanceof LockManagerImpl) {
+            LockProfiler profiler = ((LockManagerImpl) lockManager).getProfiler();
+            if (profiler != null) {
+                profiler.stopPeriodicDump();
+            }
+        }
         XEnvironment env = injectedEnvironment.getValue();
         Iterator<XResource> itres = env.getResources(null);
         while (itres.hasNext()) {
@@ -378,6 +406,16 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
 
     @Override
     public Set<XBundle> getBundles() {
+        BundleIndex bundleIndex = getBundleIndex();
+        if (bundleIndex != null) {
+            Set<XBundle> result = bundleIndex.getBundles(null);
+            Iterator<XBundle> itbundle = result.iterator();
+            while (itbundle.hasNext()) {
+                if (itbundle.next().getState() == Bundle.UNINSTALLED)
+                    itbundle.remove();
+            }
+            return Collections.unmodifiableSet(result);
+        }
         Set<XBundle> result = new HashSet<XBundle>();
         XEnvironment env = injectedEnvironment.getValue();
         Iterator<XResource> itres = env.getResources(null);
@@ -394,6 +432,10 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
 
     @Override
     public Set<XBundle> getBundles(Integer states) {
+        BundleIndex bundleIndex = getBundleIndex();
+        if (bundleIndex != null) {
+            return Collections.unmodifiableSet(bundleIndex.getBundles(states));
+        }
         Set<XBundle> result = new HashSet<XBundle>();
         XEnvironment env = injectedEnvironment.getValue();
         Iterator<XResource> itres = env.getResources(null);
@@ -408,6 +450,32 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
         return Collections.unmodifiableSet(result);
     }
 
+    void bundleStateChanged(XBundle bundle) {
+        BundleIndex bundleIndex = getBundleIndex();
+        if (bundleIndex != null) {
+            bundleIndex.stateChanged(bundle);
+        }
+    }
+
+    /**
+     * Get the current bundle generation, or -1 if bundle changes cannot be tracked
+     */
+    long getBundleGeneration() {
+        BundleIndex bundleIndex = getBundleIndex();
+        return bundleIndex != null ? bundleIndex.getGeneration() : -1;
+    }
+
+    // The index is only available if the environment was not replaced by the integration layer
+    private BundleIndex getBundleIndex() {
+        XEnvironment env = injectedEnvironment.getOptionalValue();
+        return env instanceof IndexedEnvironment ? ((IndexedEnvironment) env).getBundleIndex() : null;
+    }
+
+    PackageIndex getPackageIndex() {
+        XEnvironment env = injectedEnvironment.getOptionalValue();
+        return env instanceof IndexedEnvironment ? ((IndexedEnvironment) env).getPackageIndex() : null;
+    }
+
     @Override
     public XBundle getBundleById(long bundleId) {
         XEnvironment env = injectedEnvironment.getValue();
@@ -424,6 +492,11 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
         if (Constants.SYSTEM_BUNDLE_LOCATION.equals(location)) {
             return getSystemBundle();
         }
+        BundleIndex bundleIndex = getBundleIndex();
+        if (bundleIndex != null) {
+            XBundle bundle = bundleIndex.getBundleByLocation(location);
+            return bundle != null && bundle.getState() != Bundle.UNINSTALLED ? bundle : null;
+        }
         for (XBundle aux : getBundles()) {
             String auxLocation = aux.getLocation();
             if (location.equals(auxLocation)) {
@@ -438,6 +511,8 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
         Set<XBundle> resultSet = new HashSet<XBundle>();
         if (Constants.SYSTEM_BUNDLE_SYMBOLICNAME.equals(symbolicName) && versionRange == null) {
             resultSet.add(getSystemBundle());
+        } else if (getBundleIndex() != null) {
+            resultSet = getBundleIndex().getBundles(symbolicName, versionRange);
         } else {
             for (XBundle aux : getBundles(null)) {
                 if (symbolicName == null || symbolicName.equals(aux.getSymbolicName())) {
@@ -660,6 +735,7 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
     public void removeRevision(XBundleRevision brev, int options) {
         LOGGER.debugf("Removing revision: %s", brev);
         getFrameworkState().getFrameworkEnvironment().uninstallResources(brev);
+        invalidateServiceAssignability(brev);
         if (brev instanceof UserBundleRevision) {
             UserBundleRevision userRev = (UserBundleRevision) brev;
             userRev.getBundleState().removeRevision(userRev);
@@ -738,10 +814,26 @@ final class BundleManagerPlugin extends AbstractIntegrationService<BundleManager
             if (userRev.isFragment() == false) {
                 ModuleIdentifier identifier = moduleManager.getModuleIdentifier(brev);
                 moduleManager.removeModule(brev, identifier);
+                invalidateServiceAssignability(brev);
             }
         }
     }
 
+    /**
+     * Called when a dynamic wire was added to the wiring of the given requesting revision.
+     * The changed class space affects the revision as service requester and as service owner.
+     */
+    void dynamicWireAdded(XBundleRevision requester) {
+        invalidateServiceAssignability(requester);
+    }
+
+    private void invalidateServiceAssignability(XBundleRevision brev) {
+        ServiceManager serviceManager = getFrameworkState().getServiceManagerPlugin();
+        if (serviceManager instanceof ServiceManagerImpl) {
+            ((ServiceManagerImpl) serviceManager).invalidateAssignability(brev);
+        }
+    }
+
     private LockableItem[] getTransitiveLockForUninstall(LockManager lockManager, XBundle bundle) {
         Set<LockableItem> lockableItems = new HashSet<LockableItem>();
         lockableItems.add(lockManager.getItemForType(FrameworkWiringLock.class));
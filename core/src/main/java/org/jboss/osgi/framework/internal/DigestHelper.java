@@ -0,0 +1,69 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The SHA-1 digest that keys the resolution and woven class caches.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class DigestHelper {
+
+    // Hide ctor
+    private DigestHelper() {
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Add the chars of the given value followed by a terminator, so that adjacent values cannot run into each other
+     */
+    static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                digest.update((byte) (ch >> 8));
+                digest.update((byte) ch);
+            }
+        }
+        digest.update((byte) 0);
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.osgi.resolver.XPackageRequirement;
+
+/**
+ * An immutable matcher for the DynamicImport-Package patterns of a host revision.
+ *
+ * The pattern paths are kept in a character trie, so that all patterns that are a prefix
+ * of a given package path are found in a single walk over the path.
+ * Dynamic imports may not be used for packages that the host exports.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class DynamicImportMatcher {
+
+    private final Set<String> exportedPaths;
+    private final List<XPackageRequirement> requirements;
+    private final Node root = new Node();
+    private final boolean empty;
+
+    DynamicImportMatcher(Collection<String> exportedPaths, List<XPackageRequirement> dynamicRequirements) {
+        this.exportedPaths = new HashSet<String>(exportedPaths);
+        this.requirements = new ArrayList<XPackageRequirement>(dynamicRequirements);
+        for (int index = 0; index < requirements.size(); index++) {
+            String pattern = requirements.get(index).getPackageName();
+            Node node = root;
+            if (!pattern.equals("*")) {
+                String patternPath = getPatternPath(pattern);
+                for (int i = 0; i < patternPath.length(); i++) {
+                    node = node.getOrCreateChild(patternPath.charAt(i));
+                }
+            }
+            node.indexes.add(index);
+        }
+        this.empty = requirements.isEmpty();
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Get the dynamic requirements that match the given package path, in the order of declaration
+     */
+    List<XPackageRequirement> getMatchingRequirements(String pathName) {
+        if (empty || exportedPaths.contains(pathName))
+            return Collections.emptyList();
+
+        List<Integer> indexes = new ArrayList<Integer>(root.indexes);
+        Node node = root;
+        for (int i = 0; i < pathName.length() && node != null; i++) {
+            node = node.children != null ? node.children.get(pathName.charAt(i)) : null;
+            if (node != null) {
+                indexes.addAll(node.indexes);
+            }
+        }
+        if (indexes.isEmpty())
+            return Collections.emptyList();
+
+        Collections.sort(indexes);
+        List<XPackageRequirement> result = new ArrayList<XPackageRequirement>(indexes.size());
+        for (Integer index : indexes) {
+            result.add(requirements.get(index));
+        }
+        return result;
+    }
+
+    static String getPatternPath(String pattern) {
+        String patternPath = pattern;
+        if (pattern.endsWith(".*"))
+            patternPath = pattern.substring(0, pattern.length() - 2);
+
+        return patternPath.replace('.', '/');
+    }
+
+    private static final class Node {
+
+        private final List<Integer> indexes = new ArrayList<Integer>(1);
+        private Map<Character, Node> children;
+
+        Node getOrCreateChild(char ch) {
+            if (children == null) {
+                children = new HashMap<Character, Node>();
+            }
+            Node child = children.get(ch);
+            if (child == null) {
+                child = new Node();
+                children.put(ch, child);
+            }
+            return child;
+        }
+    }
+}
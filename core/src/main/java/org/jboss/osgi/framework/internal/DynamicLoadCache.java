@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dynamic import decisions of a {@link FallbackLoader}.
+ *
+ * Providers are cached per package path, misses per resource name. All entries are valid for one bundle generation
+ * and are dropped when the generation changes. A decision is only cached if the generation did not change while
+ * it was made. The cache is not thread safe, it is guarded by the fallback lock.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class DynamicLoadCache<T> {
+
+    private final int maxMisses;
+    private final Map<String, T> providers = new HashMap<String, T>();
+    private final Set<String> misses = new HashSet<String>();
+    private long generation = -1;
+
+    DynamicLoadCache(int maxMisses) {
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * Get the cached provider for the given package path or null
+     */
+    T getProvider(String path, long currentGeneration) {
+        return isValid(currentGeneration) ? providers.get(path) : null;
+    }
+
+    /**
+     * True if the given resource was not found dynamically before
+     */
+    boolean isMiss(String resName, long currentGeneration) {
+        return isValid(currentGeneration) && misses.contains(resName);
+    }
+
+    void putProvider(String path, T provider, long decidedIn, long currentGeneration) {
+        if (isValid(decidedIn) && decidedIn == currentGeneration) {
+            providers.put(path, provider);
+        }
+    }
+
+    void putMiss(String resName, long decidedIn, long currentGeneration) {
+        if (isValid(decidedIn) && decidedIn == currentGeneration) {
+            if (misses.size() >= maxMisses)
+                misses.clear();
+            misses.add(resName);
+        }
+    }
+
+    void clear() {
+        providers.clear();
+        misses.clear();
+    }
+
+    int size() {
+        return providers.size() + misses.size();
+    }
+
+    // A negative generation is not tracked and never cached
+    private boolean isValid(long currentGeneration) {
+        if (currentGeneration < 0)
+            return false;
+        if (currentGeneration != generation) {
+            clear();
+            generation = currentGeneration;
+        }
+        return true;
+    }
+}
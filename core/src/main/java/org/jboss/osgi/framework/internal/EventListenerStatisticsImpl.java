@@ -0,0 +1,291 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.osgi.framework.EventListenerStatistics;
+import org.jboss.osgi.framework.spi.FrameworkEvents;
+import org.jboss.osgi.resolver.XBundle;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkEvent;
+
+/**
+ * Collects the call counts and latencies of event listeners and hooks.
+ *
+ * Statistics are aggregated per kind, bundle and listener class name, so that short lived listeners like
+ * those of a ServiceTracker share one entry. Entries do not reference the listener class, which would
+ * keep the class loader of an updated or refreshed bundle alive. A call that exceeds the configured threshold is reported
+ * through a {@link FrameworkEvent#WARNING}, at most once a minute per entry.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class EventListenerStatisticsImpl implements EventListenerStatistics {
+
+    static final String BUNDLE_LISTENER = "BundleListener";
+    static final String SERVICE_LISTENER = "ServiceListener";
+    static final String FRAMEWORK_LISTENER = "FrameworkListener";
+
+    private static final long WARNING_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    private static final long[] LATENCY_BUCKET_BOUNDS = new long[] { 10L, 100L, 1000L, 10000L, 100000L, 1000000L };
+
+    private final FrameworkEvents frameworkEvents;
+    private final long syncThreshold;
+    private final long asyncThreshold;
+    private final ConcurrentMap<StatsKey, ListenerStats> entries = new ConcurrentHashMap<StatsKey, ListenerStats>();
+
+    EventListenerStatisticsImpl(FrameworkEvents frameworkEvents, long syncThreshold, long asyncThreshold) {
+        this.frameworkEvents = frameworkEvents;
+        this.syncThreshold = syncThreshold;
+        this.asyncThreshold = asyncThreshold;
+    }
+
+    /**
+     * Get the statistics entry for the given callback.
+     */
+    ListenerStats getStats(String kind, Bundle bundle, Object callee) {
+        long bundleId = bundle != null ? bundle.getBundleId() : -1;
+        String className = callee.getClass().getName();
+        StatsKey key = new StatsKey(kind, bundleId, className);
+        ListenerStats stats = entries.get(key);
+        if (stats == null) {
+            String symbolicName = bundle != null ? bundle.getSymbolicName() : null;
+            ListenerStats newStats = new ListenerStats(kind, bundleId, symbolicName, className);
+            stats = entries.putIfAbsent(key, newStats);
+            if (stats == null)
+                stats = newStats;
+        }
+        return stats;
+    }
+
+    /**
+     * Record a call that started at the given {@link System#nanoTime()} and report it if it was slow.
+     */
+    void record(ListenerStats stats, XBundle bundle, long startNanos, boolean synchronous) {
+        long nanos = System.nanoTime() - startNanos;
+        long threshold = synchronous ? syncThreshold : asyncThreshold;
+        boolean slow = threshold > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(threshold);
+        stats.record(nanos, slow);
+        if (slow && stats.isWarningDue()) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            // Do not report slow framework listeners through another framework event
+            if (FRAMEWORK_LISTENER.equals(stats.kind) || bundle == null) {
+                LOGGER.warnFrameworkEvent(MESSAGES.slowEventListener(stats.kind, stats.className, millis, threshold));
+            } else {
+                frameworkEvents.fireFrameworkEvent(bundle, FrameworkEvent.WARNING, MESSAGES.slowEventListener(stats.kind, stats.className, millis, threshold));
+            }
+        }
+    }
+
+    /**
+     * Drop the entries of an uninstalled bundle.
+     */
+    void removeBundle(long bundleId) {
+        Iterator<StatsKey> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().bundleId == bundleId) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+    }
+
+    @Override
+    public long getSynchronousThreshold() {
+        return syncThreshold;
+    }
+
+    @Override
+    public long getAsynchronousThreshold() {
+        return asyncThreshold;
+    }
+
+    @Override
+    public long[] getLatencyBucketBounds() {
+        return LATENCY_BUCKET_BOUNDS.clone();
+    }
+
+    @Override
+    public void reset() {
+        // Entries are referenced by listener registrations, so they are cleared rather than removed
+        for (ListenerStats stats : entries.values()) {
+            stats.reset();
+        }
+    }
+
+    private static final class StatsKey {
+
+        private final String kind;
+        private final long bundleId;
+        private final String className;
+
+        StatsKey(String kind, long bundleId, String className) {
+            this.kind = kind;
+            this.bundleId = bundleId;
+            this.className = className;
+        }
+
+        @Override
+        public int hashCode() {
+            return (kind.hashCode() * 31 + (int) (bundleId ^ (bundleId >>> 32))) * 31 + className.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof StatsKey))
+                return false;
+            StatsKey other = (StatsKey) obj;
+            return bundleId == other.bundleId && className.equals(other.className) && kind.equals(other.kind);
+        }
+    }
+
+    static final class ListenerStats implements Entry {
+
+        private final String kind;
+        private final long bundleId;
+        private final String symbolicName;
+        private final String className;
+        private final AtomicLong callCount = new AtomicLong();
+        private final AtomicLong slowCallCount = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong lastWarning = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+
+        ListenerStats(String kind, long bundleId, String symbolicName, String className) {
+            this.kind = kind;
+            this.bundleId = bundleId;
+            this.symbolicName = symbolicName;
+            this.className = className;
+        }
+
+        void record(long nanos, boolean slow) {
+            callCount.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKET_BOUNDS.length && micros >= LATENCY_BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            histogram.incrementAndGet(bucket);
+            if (slow) {
+                slowCallCount.incrementAndGet();
+            }
+        }
+
+        void reset() {
+            callCount.set(0);
+            slowCallCount.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+            for (int i = 0; i < histogram.length(); i++) {
+                histogram.set(i, 0);
+            }
+        }
+
+        boolean isWarningDue() {
+            long now = System.nanoTime();
+            long last = lastWarning.get();
+            return (last == 0 || now - last > WARNING_INTERVAL) && lastWarning.compareAndSet(last, now);
+        }
+
+        @Override
+        public String getKind() {
+            return kind;
+        }
+
+        @Override
+        public long getBundleId() {
+            return bundleId;
+        }
+
+        @Override
+        public String getSymbolicName() {
+            return symbolicName;
+        }
+
+        @Override
+        public String getListenerClass() {
+            return className;
+        }
+
+        @Override
+        public long getCallCount() {
+            return callCount.get();
+        }
+
+        @Override
+        public long getSlowCallCount() {
+            return slowCallCount.get();
+        }
+
+        @Override
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        @Override
+        public long[] getLatencyHistogram() {
+            long[] result = new long[histogram.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = histogram.get(i);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "[" + symbolicName + ":" + bundleId + "," + className + ",calls=" + callCount.get() + ",slow=" + slowCallCount.get() + "]";
+        }
+    }
+}
@@ -30,9 +30,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -40,7 +42,6 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.jboss.modules.LocalLoader;
 import org.jboss.modules.ModuleClassLoader;
 import org.jboss.modules.Resource;
-import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.SystemPaths;
 import org.jboss.osgi.framework.spi.URLResource;
 import org.jboss.osgi.resolver.XBundle;
@@ -63,6 +64,7 @@ import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
+import org.osgi.resource.Wire;
 
 /**
  * A fallback loader that takes care of dynamic class/resource loads.
@@ -74,15 +76,22 @@ final class FallbackLoader implements LocalLoader {
 
     private static ThreadLocal<Map<String, AtomicInteger>> dynamicLoadAttempts;
 
+    // Upper bound for the number of remembered dynamic load misses
+    static final int MAX_CACHED_MISSES = 1024;
+
     private final ReentrantLock fallbackLock = new ReentrantLock();
     private final AtomicBoolean fallbackEnabled = new AtomicBoolean(true);
     private final UserBundleState hostBundle;
     private final HostBundleRevision hostRev;
     private final Set<String> importedPaths;
     private final FrameworkState frameworkState;
-    private final BundleManager bundleManager;
+    private final BundleManagerPlugin bundleManager;
+
+    // Dynamic provider decisions, guarded by the fallback lock and valid for one bundle generation
+    private final DynamicLoadCache<DynamicLoadContext> dynamicCache = new DynamicLoadCache<DynamicLoadContext>(MAX_CACHED_MISSES);
 
-    private List<XPackageRequirement> weavingImports;
+    private final List<XPackageRequirement> weavingImports = new CopyOnWriteArrayList<XPackageRequirement>();
+    private volatile DynamicImportMatcher importMatcher;
 
     FallbackLoader(HostBundleRevision hostRev, Set<String> importedPaths) {
         assert hostRev != null : "Null hostRev";
@@ -92,6 +101,7 @@ final class FallbackLoader implements LocalLoader {
         this.hostBundle = hostRev.getBundleState();
         this.bundleManager = hostBundle.getBundleManager();
         this.frameworkState = hostBundle.getFrameworkState();
+        this.importMatcher = createImportMatcher();
         hostRev.setFallbackLoader(this);
     }
 
@@ -113,20 +123,28 @@ final class FallbackLoader implements LocalLoader {
     }
 
     void addDynamicWeavingImport(XPackageRequirement req) {
-        if (weavingImports == null) {
-            weavingImports = new ArrayList<XPackageRequirement>();
+        lockFallbackLoader();
+        try {
+            weavingImports.add(req);
+            importMatcher = createImportMatcher();
+            dynamicCache.clear();
+        } finally {
+            unlockFallbackLoader();
         }
-        weavingImports.add(req);
     }
 
     @Override
     public Class<?> loadClassLocal(String className, boolean resolve) {
+        // Most misses do not match a dynamic import, which is decided without locking
+        List<XPackageRequirement> matchingPatterns = findMatchingPatterns(className);
+        if (matchingPatterns.isEmpty())
+            return null;
+
         DynamicLoadContext context = new DynamicLoadContext(className.replace('.', '/') + ".class");
         try {
             lockFallbackLoader();
 
-            List<XPackageRequirement> matchingPatterns = findMatchingPatterns(className);
-            if (!fallbackEnabled.get() || matchingPatterns.isEmpty())
+            if (!fallbackEnabled.get())
                 return null;
 
             findRevisionDynamically(context, matchingPatterns);
@@ -145,18 +163,42 @@ final class FallbackLoader implements LocalLoader {
                 return null;
             }
             if (context.capability != null && context.requirement != null) {
-                BundleCapability bcap = (BundleCapability)context.capability;
-                BundleRequirement breq = (BundleRequirement)context.requirement;
-                AbstractBundleWire wire = new AbstractBundleWire(bcap, breq, brev, hostRev);
-                XWiring requirerWiring = (XWiring) hostBundle.adapt(BundleWiring.class);
-                XWiring providerWiring = (XWiring) brev.getBundle().adapt(BundleWiring.class);
-                requirerWiring.addRequiredWire(wire);
-                providerWiring.addProvidedWire(wire);
+                addDynamicWire(context);
             }
         }
         return result;
     }
 
+    // The first successful class load from a dynamically imported package wires the package,
+    // regardless of whether the provider was found or taken from the cache
+    private void addDynamicWire(DynamicLoadContext context) {
+        XBundleRevision brev = context.targetRevision;
+        XWiring requirerWiring = (XWiring) hostBundle.adapt(BundleWiring.class);
+        lockFallbackLoader();
+        try {
+            if (hasPackageWire(requirerWiring, context.capability.getPackageName()))
+                return;
+
+            BundleCapability bcap = (BundleCapability)context.capability;
+            BundleRequirement breq = (BundleRequirement)context.requirement;
+            AbstractBundleWire wire = new AbstractBundleWire(bcap, breq, brev, hostRev);
+            XWiring providerWiring = (XWiring) brev.getBundle().adapt(BundleWiring.class);
+            requirerWiring.addRequiredWire(wire);
+            providerWiring.addProvidedWire(wire);
+        } finally {
+            unlockFallbackLoader();
+        }
+        bundleManager.dynamicWireAdded(hostRev);
+    }
+
+    private static boolean hasPackageWire(XWiring wiring, String packageName) {
+        for (Wire wire : wiring.getRequiredResourceWires(PackageNamespace.PACKAGE_NAMESPACE)) {
+            if (packageName.equals(wire.getCapability().getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE)))
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public Package loadPackageLocal(String name) {
         throw new UnsupportedOperationException();
@@ -165,14 +207,17 @@ final class FallbackLoader implements LocalLoader {
     @Override
     public List<Resource> loadResourceLocal(String resName) {
         DynamicLoadContext context = new DynamicLoadContext(resName);
+        if (resName.startsWith("/"))
+            resName = resName.substring(1);
+
+        List<XPackageRequirement> matchingPatterns = findMatchingPatterns(resName);
+        if (matchingPatterns.isEmpty())
+            return Collections.emptyList();
+
         try {
             lockFallbackLoader();
 
-            if (resName.startsWith("/"))
-                resName = resName.substring(1);
-
-            List<XPackageRequirement> matchingPatterns = findMatchingPatterns(resName);
-            if (!fallbackEnabled.get() || matchingPatterns.isEmpty())
+            if (!fallbackEnabled.get())
                 return Collections.emptyList();
 
             findRevisionDynamically(context, matchingPatterns);
@@ -202,6 +247,10 @@ final class FallbackLoader implements LocalLoader {
         if (importedPaths.contains(path))
             return;
 
+        long generation = bundleManager.getBundleGeneration();
+        if (findCachedRevision(context, path, generation))
+            return;
+
         if (dynamicLoadAttempts == null)
             dynamicLoadAttempts = new ThreadLocal<Map<String, AtomicInteger>>();
 
@@ -226,6 +275,7 @@ final class FallbackLoader implements LocalLoader {
                         findInSystemRevision(context, matchingPatterns);
                     }
                 }
+                updateDynamicCache(context, path, generation);
             }
         } finally {
             if (removeThreadLocalMapping == true) {
@@ -238,34 +288,50 @@ final class FallbackLoader implements LocalLoader {
         }
     }
 
-    private List<XPackageRequirement> findMatchingPatterns(String resName) {
-
-        List<XPackageRequirement> dynamicRequirements = getDynamicPackageRequirements(hostRev);
+    private boolean findCachedRevision(DynamicLoadContext context, String path, long generation) {
+        DynamicLoadContext cached = dynamicCache.getProvider(path, generation);
+        if (cached != null) {
+            LOGGER.tracef("Found cached provider for path [%s]: %s", path, cached.targetRevision);
+            context.targetRevision = cached.targetRevision;
+            context.capability = cached.capability;
+            context.requirement = cached.requirement;
+            return true;
+        }
 
-        // Dynamic imports may not be used when the package is exported
-        String pathName = VFSUtils.getPathFromClassName(resName);
-        List<XPackageCapability> packageCapabilities = getPackageCapabilities(hostRev);
-        for (XPackageCapability packageCap : packageCapabilities) {
-            String packagePath = packageCap.getPackageName().replace('.', '/');
-            if (pathName.equals(packagePath))
-                return Collections.emptyList();
+        if (dynamicCache.isMiss(context.resName, generation)) {
+            LOGGER.tracef("Found cached miss for: %s", context.resName);
+            return true;
         }
 
-        List<XPackageRequirement> foundMatch = new ArrayList<XPackageRequirement>();
-        for (XPackageRequirement dynreq : dynamicRequirements) {
+        return false;
+    }
 
-            final String pattern = dynreq.getPackageName();
-            if (pattern.equals("*")) {
-                foundMatch.add(dynreq);
-                continue;
-            }
+    private void updateDynamicCache(DynamicLoadContext context, String path, long generation) {
+        // Do not cache decisions that were made while bundles changed
+        long currentGeneration = bundleManager.getBundleGeneration();
+        if (context.targetRevision != null) {
+            dynamicCache.putProvider(path, context, generation, currentGeneration);
+        } else {
+            dynamicCache.putMiss(context.resName, generation, currentGeneration);
+        }
+    }
 
-            String patternPath = getPatternPath(pattern);
-            if (pathName.startsWith(patternPath)) {
-                foundMatch.add(dynreq);
-                continue;
-            }
+    private DynamicImportMatcher createImportMatcher() {
+        List<String> exportedPaths = new ArrayList<String>();
+        for (XPackageCapability packageCap : getPackageCapabilities(hostRev)) {
+            exportedPaths.add(packageCap.getPackageName().replace('.', '/'));
         }
+        return new DynamicImportMatcher(exportedPaths, getDynamicPackageRequirements(hostRev));
+    }
+
+    private List<XPackageRequirement> findMatchingPatterns(String resName) {
+        DynamicImportMatcher matcher = importMatcher;
+        if (matcher.isEmpty())
+            return Collections.emptyList();
+
+        // Dynamic imports may not be used when the package is exported
+        String pathName = VFSUtils.getPathFromClassName(resName);
+        List<XPackageRequirement> foundMatch = matcher.getMatchingRequirements(pathName);
 
         if (foundMatch.isEmpty() == false)
             LOGGER.tracef("Found match for path [%s] with Dynamic-ImportPackage pattern: %s", resName, foundMatch);
@@ -276,6 +342,12 @@ final class FallbackLoader implements LocalLoader {
     }
 
     private void findInResolvedRevisions(DynamicLoadContext context, List<XPackageRequirement> matchingPatterns) {
+        PackageIndex packageIndex = bundleManager.getPackageIndex();
+        if (packageIndex != null) {
+            findInPackageExporters(context, matchingPatterns, packageIndex);
+            return;
+        }
+
         LOGGER.tracef("Attempt to find path dynamically in resolved modules ...");
         Set<XBundle> resolved = bundleManager.getBundles(Bundle.RESOLVED | Bundle.ACTIVE);
         LOGGER.tracef("Resolved modules: %d", resolved.size());
@@ -323,6 +395,35 @@ final class FallbackLoader implements LocalLoader {
         }
     }
 
+    private void findInPackageExporters(DynamicLoadContext context, List<XPackageRequirement> matchingPatterns, PackageIndex packageIndex) {
+        String resName = context.resName;
+        String packageName = resName.substring(0, resName.lastIndexOf('/')).replace('/', '.');
+        List<XPackageCapability> exporters = packageIndex.getExporters(packageName);
+        LOGGER.tracef("Attempt to find path dynamically in exporters of [%s]: %s", packageName, exporters);
+        if (exporters.isEmpty())
+            return;
+
+        for (XPackageRequirement pkgreq : matchingPatterns) {
+            for (XPackageCapability pcap : exporters) {
+                XBundleRevision brev = (XBundleRevision) pcap.getResource();
+                XBundle bundle = brev.getBundle();
+                if (bundle == hostBundle || bundle.getBundleId() == 0 || brev.isFragment())
+                    continue;
+
+                // Only the current revision of a resolved bundle can provide the package
+                if ((bundle.getState() & (Bundle.RESOLVED | Bundle.ACTIVE)) == 0 || bundle.getBundleRevision() != brev)
+                    continue;
+
+                if (pkgreq.matches(pcap) && brev.getEntry(resName) != null && filterMatches(pkgreq, pcap)) {
+                    context.capability = pcap;
+                    context.targetRevision = brev;
+                    context.requirement = pkgreq;
+                    return;
+                }
+            }
+        }
+    }
+
     private boolean filterMatches(XPackageRequirement req, XPackageCapability cap) {
 
         // Cannot filter invalid types
@@ -360,6 +461,12 @@ final class FallbackLoader implements LocalLoader {
     }
 
     private void findInUnresolvedRevisions(DynamicLoadContext context, List<XPackageRequirement> matchingPatterns) {
+        PackageIndex packageIndex = bundleManager.getPackageIndex();
+        if (packageIndex != null) {
+            findInUnresolvedExporters(context, matchingPatterns, packageIndex);
+            return;
+        }
+
         LOGGER.tracef("Attempt to find path dynamically in unresolved modules ...");
         Set<XBundle> unresolved = bundleManager.getBundles(Bundle.INSTALLED);
         LOGGER.tracef("Unresolved modules: %d", unresolved.size());
@@ -378,6 +485,50 @@ final class FallbackLoader implements LocalLoader {
         findInResolvedRevisions(context, matchingPatterns);
     }
 
+    private void findInUnresolvedExporters(DynamicLoadContext context, List<XPackageRequirement> matchingPatterns, PackageIndex packageIndex) {
+        String resName = context.resName;
+        String packageName = resName.substring(0, resName.lastIndexOf('/')).replace('/', '.');
+        Set<Bundle> unresolved = getUnresolvedExporters(packageIndex, packageName, matchingPatterns);
+        LOGGER.tracef("Unresolved exporters of [%s]: %s", packageName, unresolved);
+        if (unresolved.isEmpty())
+            return;
+
+        resolveExporters(unresolved);
+        findInResolvedRevisions(context, matchingPatterns);
+    }
+
+    // Only the INSTALLED bundles that export a matching package qualify
+    private Set<Bundle> getUnresolvedExporters(PackageIndex packageIndex, String packageName, List<XPackageRequirement> matchingPatterns) {
+        Set<Bundle> unresolved = new LinkedHashSet<Bundle>();
+        for (XPackageCapability pcap : packageIndex.getExporters(packageName)) {
+            XBundleRevision brev = (XBundleRevision) pcap.getResource();
+            XBundle bundle = brev.getBundle();
+            if (bundle == hostBundle || bundle.getState() != Bundle.INSTALLED || bundle.getBundleRevision() != brev)
+                continue;
+            if (!(bundle instanceof AbstractBundleState)) {
+                LOGGER.tracef("Ignore invalid bundle type: %s", bundle);
+                continue;
+            }
+            for (XPackageRequirement pkgreq : matchingPatterns) {
+                if (pkgreq.matches(pcap)) {
+                    unresolved.add(bundle);
+                    break;
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    // A bundle that cannot be resolved must not fail the dynamic load, as with ensureResolved(false)
+    private boolean resolveExporters(Set<Bundle> unresolved) {
+        try {
+            return frameworkState.getFrameworkWiring().resolveBundles(unresolved);
+        } catch (RuntimeException ex) {
+            LOGGER.debugf(ex, "Cannot resolve: %s", unresolved);
+            return false;
+        }
+    }
+
     private void findInSystemRevision(DynamicLoadContext context, List<XPackageRequirement> matchingPatterns) {
         LOGGER.tracef("Attempt to find path dynamically in framework module ...");
         String resName = context.resName;
@@ -432,16 +583,6 @@ final class FallbackLoader implements LocalLoader {
         return result;
     }
 
-    private String getPatternPath(final String pattern) {
-
-        String patternPath = pattern;
-        if (pattern.endsWith(".*"))
-            patternPath = pattern.substring(0, pattern.length() - 2);
-
-        patternPath = patternPath.replace('.', '/');
-        return patternPath;
-    }
-
     private List<XPackageCapability> getPackageCapabilities(BundleRevision brev) {
         List<XPackageCapability> result = new ArrayList<XPackageCapability>();
         for (Capability aux : brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
@@ -462,8 +603,7 @@ final class FallbackLoader implements LocalLoader {
         }
 
         // Add the dynamic package reqs generated by the {@link WeavingHook}s.
-        if (weavingImports != null && !weavingImports.isEmpty())
-            result.addAll(weavingImports);
+        result.addAll(weavingImports);
 
         return result;
     }
@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.internal.ServicePropertyIndex.IndexOperand;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * A bounded cache of parsed {@link Filter} instances keyed by the filter string.
+ *
+ * Filters created by {@link FrameworkUtil} are immutable and can be shared. When the cache is full,
+ * entries that have not been used since the last sweep are evicted first.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class FilterCache {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final FilterCache INSTANCE = new FilterCache(getConfiguredCapacity());
+
+    private final int capacity;
+    private final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    static FilterCache getInstance() {
+        return INSTANCE;
+    }
+
+    FilterCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the cached filter or parse and cache a new one.
+     * Invalid filter strings are not cached.
+     */
+    Filter createFilter(String filterStr) throws InvalidSyntaxException {
+        if (filterStr == null || capacity <= 0)
+            return FrameworkUtil.createFilter(filterStr);
+
+        CacheEntry entry = cache.get(filterStr);
+        if (entry != null) {
+            entry.referenced = true;
+            hits.incrementAndGet();
+            return entry.filter;
+        }
+
+        misses.incrementAndGet();
+        Filter filter = FrameworkUtil.createFilter(filterStr);
+        if (cache.putIfAbsent(filterStr, new CacheEntry(filter)) == null) {
+            if (size.incrementAndGet() > capacity) {
+                evictEntries();
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Get the filter operands that a {@link ServicePropertyIndex} can answer.
+     * The operands are parsed once and kept with the cached filter.
+     */
+    IndexOperand[] getIndexOperands(String filterStr, Filter filter) {
+        CacheEntry entry = filterStr != null ? cache.get(filterStr) : null;
+        if (entry == null || entry.filter != filter)
+            return ServicePropertyIndex.parseOperands(filter.toString());
+
+        IndexOperand[] operands = entry.operands;
+        if (operands == null) {
+            operands = ServicePropertyIndex.parseOperands(filter.toString());
+            entry.operands = operands;
+        }
+        return operands;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getSize() {
+        return size.get();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private void evictEntries() {
+        // Give recently used entries a second chance, the second pass evicts regardless
+        for (int pass = 0; pass < 2 && size.get() > capacity; pass++) {
+            Iterator<Map.Entry<String, CacheEntry>> iterator = cache.entrySet().iterator();
+            while (size.get() > capacity && iterator.hasNext()) {
+                Map.Entry<String, CacheEntry> mapEntry = iterator.next();
+                CacheEntry entry = mapEntry.getValue();
+                if (pass == 0 && entry.referenced) {
+                    entry.referenced = false;
+                } else if (cache.remove(mapEntry.getKey(), entry)) {
+                    size.decrementAndGet();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static int getConfiguredCapacity() {
+        String value = SecurityActions.getSystemProperty(Constants.PROPERTY_FILTER_CACHE_SIZE, null);
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : DEFAULT_CAPACITY;
+        } catch (NumberFormatException ex) {
+            return DEFAULT_CAPACITY;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FilterCache[size=" + size + ",hits=" + hits + ",misses=" + misses + ",evictions=" + evictions + "]";
+    }
+
+    private static final class CacheEntry {
+        private final Filter filter;
+        private volatile boolean referenced;
+        private volatile IndexOperand[] operands;
+
+        CacheEntry(Filter filter) {
+            this.filter = filter;
+        }
+    }
+}
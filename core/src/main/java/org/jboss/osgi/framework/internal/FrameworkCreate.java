@@ -30,6 +30,8 @@ import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
 import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
+import org.jboss.osgi.framework.EventListenerStatistics;
+import org.jboss.osgi.framework.LockStatistics;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.spi.AbstractIntegrationService;
 import org.jboss.osgi.framework.spi.BundleStartLevelSupport;
@@ -38,11 +40,13 @@ import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.FrameworkModuleLoader;
 import org.jboss.osgi.framework.spi.FrameworkStartLevelSupport;
 import org.jboss.osgi.framework.spi.IntegrationServices;
+import org.jboss.osgi.framework.spi.LockManager;
 import org.jboss.osgi.framework.spi.NativeCode;
 import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.StartLevelManager;
 import org.jboss.osgi.resolver.XResolver;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.launch.Framework;
 import org.osgi.framework.wiring.FrameworkWiring;
 
@@ -108,6 +112,8 @@ public final class FrameworkCreate extends AbstractFrameworkService {
     private class FrameworkCreated extends AbstractIntegrationService<BundleContext> {
 
         final InjectedValue<BundleContext> injectedBundleContext = new InjectedValue<BundleContext>();
+        private ServiceRegistration<EventListenerStatistics> statisticsRegistration;
+        private ServiceRegistration<LockStatistics> lockStatisticsRegistration;
 
         private FrameworkCreated() {
             super(Services.FRAMEWORK_CREATE);
@@ -120,6 +126,44 @@ public final class FrameworkCreate extends AbstractFrameworkService {
             builder.setInitialMode(initialMode);
         }
 
+        @Override
+        public void start(StartContext startContext) throws StartException {
+            super.start(startContext);
+            // Expose the listener call statistics of the default event plugin
+            FrameworkEvents frameworkEvents = frameworkState.getFrameworkEvents();
+            if (frameworkEvents instanceof FrameworkEventsImpl) {
+                EventListenerStatistics statistics = ((FrameworkEventsImpl) frameworkEvents).getListenerStatistics();
+                statisticsRegistration = getValue().registerService(EventListenerStatistics.class, statistics, null);
+            }
+            // Expose the lock statistics if profiling is enabled
+            LockManager lockManager = frameworkState.getLockManager();
+            if (lockManager instanceof LockManagerImpl && ((LockManagerImpl) lockManager).getProfiler() != null) {
+                LockStatistics statistics = ((LockManagerImpl) lockManager).getProfiler();
+                lockStatisticsRegistration = getValue().registerService(LockStatistics.class, statistics, null);
+            }
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            if (statisticsRegistration != null) {
+                try {
+                    statisticsRegistration.unregister();
+                } catch (IllegalStateException ex) {
+                    // ignore, the system bundle is already stopped
+                }
+                statisticsRegistration = null;
+            }
+            if (lockStatisticsRegistration != null) {
+                try {
+                    lockStatisticsRegistration.unregister();
+                } catch (IllegalStateException ex) {
+                    // ignore, the system bundle is already stopped
+                }
+                lockStatisticsRegistration = null;
+            }
+            super.stop(context);
+        }
+
         @Override
         protected BundleContext createServiceValue(StartContext startContext) throws StartException {
             return injectedBundleContext.getValue();
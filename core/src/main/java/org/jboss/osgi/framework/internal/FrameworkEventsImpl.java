@@ -42,6 +42,7 @@ import java.util.concurrent.ExecutorService;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.LockManager;
 import org.jboss.osgi.framework.spi.LockManager.LockContext;
+import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.resolver.spi.RemoveOnlyCollection;
@@ -56,11 +57,9 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
-import org.osgi.framework.ServiceReference;
 import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.framework.UnfilteredServiceListener;
 import org.osgi.framework.hooks.bundle.EventHook;
@@ -80,6 +79,8 @@ final class FrameworkEventsImpl implements FrameworkEvents {
 
     private final BundleManagerPlugin bundleManager;
     private final ExecutorService executorService;
+    private final BundleEventDispatcher bundleEventDispatcher;
+    private final EventListenerStatisticsImpl statistics;
     private final LockManager lockManager;
 
     /** The bundleState listeners */
@@ -88,16 +89,27 @@ final class FrameworkEventsImpl implements FrameworkEvents {
     private final Map<XBundle, List<FrameworkListener>> frameworkListeners = new ConcurrentHashMap<XBundle, List<FrameworkListener>>();
     /** The service listeners */
     private final Map<XBundle, List<ServiceListenerRegistration>> serviceListeners = new ConcurrentHashMap<XBundle, List<ServiceListenerRegistration>>();
+    /** The service listeners by the objectClass their filter requires */
+    private final ServiceListenerIndex serviceListenerIndex = new ServiceListenerIndex();
+
+    /** The default threshold in milliseconds for slow synchronous listener calls */
+    private static final long DEFAULT_SLOW_SYNCHRONOUS_THRESHOLD = 0;
+    /** The default threshold in milliseconds for slow asynchronous listener calls */
+    private static final long DEFAULT_SLOW_ASYNCHRONOUS_THRESHOLD = 0;
 
     /** The set of bundleState events that are delivered to an (asynchronous) BundleListener */
     private Set<Integer> asyncBundleEvents = new HashSet<Integer>();
     /** The set of events that are logged at INFO level */
     private Set<String> infoEvents = new HashSet<String>();
 
-    FrameworkEventsImpl(BundleManagerPlugin bundleManager, ExecutorService executorService, LockManager lockManager) {
+    FrameworkEventsImpl(BundleManagerPlugin bundleManager, ExecutorService executorService, ExecutorService bundleEventExecutor, LockManager lockManager) {
         this.bundleManager = bundleManager;
         this.executorService = executorService;
         this.lockManager = lockManager;
+        long syncThreshold = getThreshold(org.jboss.osgi.framework.Constants.PROPERTY_SLOW_SYNCHRONOUS_LISTENER_THRESHOLD, DEFAULT_SLOW_SYNCHRONOUS_THRESHOLD);
+        long asyncThreshold = getThreshold(org.jboss.osgi.framework.Constants.PROPERTY_SLOW_ASYNCHRONOUS_LISTENER_THRESHOLD, DEFAULT_SLOW_ASYNCHRONOUS_THRESHOLD);
+        this.statistics = new EventListenerStatisticsImpl(this, syncThreshold, asyncThreshold);
+        this.bundleEventDispatcher = bundleEventExecutor != null ? new BundleEventDispatcher(bundleEventExecutor, statistics) : null;
         asyncBundleEvents.add(new Integer(BundleEvent.INSTALLED));
         asyncBundleEvents.add(new Integer(BundleEvent.RESOLVED));
         asyncBundleEvents.add(new Integer(BundleEvent.STARTED));
@@ -115,6 +127,25 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         infoEvents.add(ConstantsHelper.bundleEvent(BundleEvent.UNINSTALLED));
     }
 
+    private long getThreshold(String key, long defaultValue) {
+        Object value = bundleManager.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException ex) {
+            LOGGER.debugf("Invalid value for %s: %s", key, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The call statistics of the listeners and hooks
+     */
+    EventListenerStatisticsImpl getListenerStatistics() {
+        return statistics;
+    }
+
     @Override
     public void addBundleListener(final XBundle bundle, final BundleListener listener) {
         assert listener != null : "Null listener";
@@ -127,6 +158,9 @@ final class FrameworkEventsImpl implements FrameworkEvents {
             BundleListenerRegistration registration = new BundleListenerRegistration(bundle, listener);
             if (registrations.contains(registration) == false) {
                 registrations.add(registration);
+                if (bundleEventDispatcher != null) {
+                    bundleEventDispatcher.addListener(registration);
+                }
             }
         }
     }
@@ -143,6 +177,9 @@ final class FrameworkEventsImpl implements FrameworkEvents {
                         BundleListenerRegistration registration = iterator.next();
                         if (registration.getListener() == listener) {
                             iterator.remove();
+                            if (bundleEventDispatcher != null) {
+                                bundleEventDispatcher.removeListener(registration);
+                            }
                             break;
                         }
                     }
@@ -156,7 +193,12 @@ final class FrameworkEventsImpl implements FrameworkEvents {
     @Override
     public void removeBundleListeners(final XBundle bundleState) {
         synchronized (bundleListeners) {
-            bundleListeners.remove(bundleState);
+            List<BundleListenerRegistration> registrations = bundleListeners.remove(bundleState);
+            if (registrations != null && bundleEventDispatcher != null) {
+                for (BundleListenerRegistration registration : registrations) {
+                    bundleEventDispatcher.removeListener(registration);
+                }
+            }
         }
     }
 
@@ -164,6 +206,9 @@ final class FrameworkEventsImpl implements FrameworkEvents {
     public void removeAllBundleListeners() {
         synchronized (bundleListeners) {
             bundleListeners.clear();
+            if (bundleEventDispatcher != null) {
+                bundleEventDispatcher.removeAllListeners();
+            }
         }
     }
 
@@ -224,7 +269,7 @@ final class FrameworkEventsImpl implements FrameworkEvents {
             removeServiceListener(bundleState, listener);
 
             // Create the new listener registration
-            Filter filter = (filterstr != null ? FrameworkUtil.createFilter(filterstr) : NoFilter.INSTANCE);
+            Filter filter = (filterstr != null ? FilterCache.getInstance().createFilter(filterstr) : NoFilter.INSTANCE);
             ServiceListenerRegistration slreg = new ServiceListenerRegistration(bundleState, listener, filter);
 
             // The {@link ListenerHook} added method is called to provide the hook implementation with information on newly
@@ -240,6 +285,7 @@ final class FrameworkEventsImpl implements FrameworkEvents {
 
             // Add the listener to the list
             listeners.add(slreg);
+            serviceListenerIndex.addListener(slreg);
         }
     }
 
@@ -267,6 +313,7 @@ final class FrameworkEventsImpl implements FrameworkEvents {
                 int index = listeners.indexOf(slreg);
                 if (index >= 0) {
                     slreg = listeners.remove(index);
+                    serviceListenerIndex.removeListener(slreg);
 
                     // The {@link ListenerHook} 'removed' method is called to provide the hook implementation with information
                     // on newly removed service listeners.
@@ -289,7 +336,12 @@ final class FrameworkEventsImpl implements FrameworkEvents {
     public void removeServiceListeners(final XBundle bundleState) {
         synchronized (serviceListeners) {
             Collection<ListenerInfo> listenerInfos = getServiceListenerInfos(bundleState);
-            serviceListeners.remove(bundleState);
+            List<ServiceListenerRegistration> registrations = serviceListeners.remove(bundleState);
+            if (registrations != null) {
+                for (ServiceListenerRegistration slreg : registrations) {
+                    serviceListenerIndex.removeListener(slreg);
+                }
+            }
 
             // The {@link ListenerHook} 'removed' method is called to provide the hook implementation with information on newly
             // removed service listeners.
@@ -308,6 +360,7 @@ final class FrameworkEventsImpl implements FrameworkEvents {
     public void removeAllServiceListeners() {
         synchronized (serviceListeners) {
             serviceListeners.clear();
+            serviceListenerIndex.clear();
         }
     }
 
@@ -316,22 +369,20 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         if (bundleManager.isFrameworkCreated() == false)
             return Collections.emptyList();
 
-        ServiceReference<?>[] srefs = null;
-        SystemBundleState sysbundle = bundleManager.getSystemBundle();
-        BundleContext syscontext = sysbundle.getBundleContext();
-        try {
-            srefs = syscontext.getServiceReferences(ListenerHook.class.getName(), null);
-        } catch (InvalidSyntaxException e) {
-            // ignore
-        }
-        if (srefs == null)
-            return Collections.emptyList();
-
-        List<ListenerHook> hooks = new ArrayList<ListenerHook>();
-        for (ServiceReference<?> sref : srefs)
-            hooks.add((ListenerHook) syscontext.getService(sref));
+        return getHooks(ListenerHook.class);
+    }
 
-        return Collections.unmodifiableList(hooks);
+    /**
+     * Get the cached hooks of the given type. The hook with the highest ranking comes first.
+     */
+    private <T> List<T> getHooks(Class<T> hookType) {
+        BundleContext syscontext = bundleManager.getSystemBundle().getBundleContext();
+        ServiceManager serviceManager = bundleManager.getFrameworkState().getServiceManagerPlugin();
+        if (serviceManager instanceof ServiceManagerImpl) {
+            ServiceHookCache hookCache = ((ServiceManagerImpl) serviceManager).getHookCache();
+            return hookCache.getHooks(hookType, syscontext);
+        }
+        return ServiceHookCache.lookupHooks(hookType, syscontext);
     }
 
     @Override
@@ -344,6 +395,10 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         if (bundle == null)
             throw MESSAGES.illegalArgumentNull("bundle");
 
+        // Drop the listener statistics of an uninstalled bundle
+        if (type == BundleEvent.UNINSTALLED)
+            statistics.removeBundle(bundle.getBundleId());
+
         // Do nothing it the framework is not active
         if (bundleManager.isFrameworkCreated() == false)
             return;
@@ -367,10 +422,8 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         for (XBundle aux : bundleListeners.keySet()) {
             contexts.add(aux.getBundleContext());
         }
-        SystemBundleState sysbundle = bundleManager.getSystemBundle();
-        BundleContext syscontext = sysbundle.getBundleContext();
         contexts = new RemoveOnlyCollection<BundleContext>(contexts);
-        callBundleEventHooks(syscontext, contexts, event);
+        callBundleEventHooks(contexts, event);
 
         // Remove the filtered {@link BundleListener} registrations
         Iterator<BundleListenerRegistration> iterator = registrations.iterator();
@@ -400,14 +453,26 @@ final class FrameworkEventsImpl implements FrameworkEvents {
                         LOGGER.debugf("Calling out to client code with current lock: %s", currentLock);
                     }
                     iterator.remove();
-                    listener.bundleChanged(event);
+                    long start = System.nanoTime();
+                    try {
+                        listener.bundleChanged(event);
+                    } finally {
+                        statistics.record(blreg.getStats(statistics), blreg.getBundle(), start, true);
+                    }
                 }
             } catch (Throwable th) {
                 LOGGER.warnErrorWhileFiringBundleEvent(th, typeName, bundle);
             }
         }
 
-        if (!registrations.isEmpty()) {
+        // Deliver the asynchronous events through the per listener mailboxes
+        if (!registrations.isEmpty() && bundleEventDispatcher != null) {
+            if (asyncBundleEvents.contains(type)) {
+                for (BundleListenerRegistration blreg : registrations) {
+                    bundleEventDispatcher.deliver(blreg, event);
+                }
+            }
+        } else if (!registrations.isEmpty()) {
             Runnable runner = new Runnable() {
                 @Override
                 public void run() {
@@ -418,7 +483,12 @@ final class FrameworkEventsImpl implements FrameworkEvents {
                             BundleListener listener = blreg.listener;
                             try {
                                 if (!(listener instanceof SynchronousBundleListener)) {
-                                    listener.bundleChanged(event);
+                                    long start = System.nanoTime();
+                                    try {
+                                        listener.bundleChanged(event);
+                                    } finally {
+                                        statistics.record(blreg.getStats(statistics), blreg.getBundle(), start, false);
+                                    }
                                 }
                             } catch (Throwable th) {
                                 LOGGER.warnErrorWhileFiringBundleEvent(th, typeName, bundle);
@@ -433,36 +503,25 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         }
     }
 
-    private void callBundleEventHooks(BundleContext syscontext, Collection<BundleContext> contexts, BundleEvent event) {
+    private void callBundleEventHooks(Collection<BundleContext> contexts, BundleEvent event) {
         // Call the registered event listener hooks
-        for (EventHook hook : getBundleEventHooks(syscontext)) {
+        for (EventHook hook : getHooks(EventHook.class)) {
+            long start = System.nanoTime();
             try {
                 hook.event(event, contexts);
             } catch (Exception ex) {
                 LOGGER.warnErrorWhileCallingBundleEventHook(ex, hook);
+            } finally {
+                recordHookCall(EventHook.class, hook, start);
             }
         }
     }
 
-    private List<EventHook> getBundleEventHooks(BundleContext syscontext) {
-
-        List<EventHook> hooks = new ArrayList<EventHook>();
-        Collection<ServiceReference<EventHook>> srefs = null;
-        try {
-            srefs = syscontext.getServiceReferences(EventHook.class, null);
-        } catch (InvalidSyntaxException e) {
-            // ignore
-        }
-
-        // The calling order of the hooks is defined by the reversed compareTo ordering of their Service
-        // Reference objects. That is, the service with the highest ranking number is called first.
-        List<ServiceReference<EventHook>> sorted = new ArrayList<ServiceReference<EventHook>>(srefs);
-        Collections.reverse(sorted);
-
-        for (ServiceReference<EventHook> sref : sorted)
-            hooks.add(syscontext.getService(sref));
-
-        return hooks;
+    /**
+     * The dispatcher of asynchronous bundle events or null if they are delivered on the framework events thread
+     */
+    BundleEventDispatcher getBundleEventDispatcher() {
+        return bundleEventDispatcher;
     }
 
     @Override
@@ -474,17 +533,20 @@ final class FrameworkEventsImpl implements FrameworkEvents {
 
         // Get a snapshot of the current listeners
         final ArrayList<FrameworkListener> listeners = new ArrayList<FrameworkListener>();
+        final ArrayList<XBundle> owners = new ArrayList<XBundle>();
         synchronized (frameworkListeners) {
             if (providedListeners != null) {
                 for (FrameworkListener listener : providedListeners) {
                     if (listener != null) {
                         listeners.add(listener);
+                        owners.add(bundleManager.getSystemBundle());
                     }
                 }
             }
             for (Entry<XBundle, List<FrameworkListener>> entry : frameworkListeners.entrySet()) {
                 for (FrameworkListener listener : entry.getValue()) {
                     listeners.add(listener);
+                    owners.add(entry.getKey());
                 }
             }
         }
@@ -511,7 +573,10 @@ final class FrameworkEventsImpl implements FrameworkEvents {
             @Override
             public void run() {
                 // Call the listeners
-                for (FrameworkListener listener : listeners) {
+                for (int i = 0; i < listeners.size(); i++) {
+                    FrameworkListener listener = listeners.get(i);
+                    XBundle owner = owners.get(i);
+                    long start = System.nanoTime();
                     try {
                         listener.frameworkEvent(event);
                     } catch (RuntimeException ex) {
@@ -525,6 +590,8 @@ final class FrameworkEventsImpl implements FrameworkEvents {
                         }
                     } catch (Throwable th) {
                         LOGGER.warnErrorWhileFiringEvent(th, typeName);
+                    } finally {
+                        statistics.record(statistics.getStats(EventListenerStatisticsImpl.FRAMEWORK_LISTENER, owner, listener), owner, start, false);
                     }
                 }
             }
@@ -541,39 +608,36 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         if (bundleManager.isFrameworkCreated() == false)
             return;
 
-        // Get a snapshot of the current listeners
-        Map<BundleContext, Collection<ListenerInfo>> listeners;
-        synchronized (serviceListeners) {
-            listeners = new HashMap<BundleContext, Collection<ListenerInfo>>();
-            for (Entry<XBundle, List<ServiceListenerRegistration>> entry : serviceListeners.entrySet()) {
-                for (ServiceListenerRegistration listener : entry.getValue()) {
-                    BundleContext context = listener.getBundleContext();
-                    if (context != null) {
-                        Collection<ListenerInfo> infos = listeners.get(context);
-                        if (infos == null) {
-                            infos = new ArrayList<ListenerInfo>();
-                            listeners.put(context, infos);
-                        }
-                        infos.add(listener.getListenerInfo());
-                    }
-                }
-            }
-            for (Map.Entry<BundleContext, Collection<ListenerInfo>> entry : listeners.entrySet()) {
-                listeners.put(entry.getKey(), new RemoveOnlyCollection<ListenerInfo>(entry.getValue()));
+        LOGGER.tracef("Service %s: %s", ConstantsHelper.serviceEvent(type), serviceState);
+
+        // Without event hooks the listeners are called directly from the immutable listener arrays
+        List<org.osgi.framework.hooks.service.EventHook> eventHooks = getHooks(org.osgi.framework.hooks.service.EventHook.class);
+        List<EventListenerHook> listenerHooks = getHooks(EventListenerHook.class);
+        if (eventHooks.isEmpty() && listenerHooks.isEmpty()) {
+            fireServiceEventDirect(type, serviceState);
+            return;
+        }
+
+        // Get a snapshot of the listeners that can possibly match the service
+        Map<BundleContext, Collection<ListenerInfo>> listeners = new HashMap<BundleContext, Collection<ListenerInfo>>();
+        String[] clazzes = (String[]) serviceState.getProperty(Constants.OBJECTCLASS);
+        for (int i = 0; i < clazzes.length; i++) {
+            if (isFirstOccurrence(clazzes, i)) {
+                addListenerInfos(listeners, serviceListenerIndex.getListeners(clazzes[i]));
             }
-            listeners = new RemoveOnlyMap<BundleContext, Collection<ListenerInfo>>(listeners);
         }
+        addListenerInfos(listeners, serviceListenerIndex.getResidualListeners());
+        for (Map.Entry<BundleContext, Collection<ListenerInfo>> entry : listeners.entrySet()) {
+            listeners.put(entry.getKey(), new RemoveOnlyCollection<ListenerInfo>(entry.getValue()));
+        }
+        listeners = new RemoveOnlyMap<BundleContext, Collection<ListenerInfo>>(listeners);
 
         // Construct the ServiceEvent
         ServiceEvent event = new ServiceEventImpl(type, serviceState);
-        String typeName = ConstantsHelper.serviceEvent(event.getType());
-        LOGGER.tracef("Service %s: %s", typeName, serviceState);
 
         // Call the registered event hooks
-        SystemBundleState sysbundle = bundleManager.getSystemBundle();
-        BundleContext syscontext = sysbundle.getBundleContext();
-        callServiceEventHooks(syscontext, listeners, event);
-        callServieEventListenerHooks(syscontext, listeners, event);
+        callServiceEventHooks(eventHooks, listeners, event);
+        callServieEventListenerHooks(listenerHooks, listeners, event);
 
         // Nobody is interested
         if (listeners.isEmpty())
@@ -583,92 +647,131 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         for (Map.Entry<BundleContext, Collection<ListenerInfo>> entry : listeners.entrySet()) {
             for (ListenerInfo info : entry.getValue()) {
                 ServiceListenerRegistration listenerReg = ((ListenerInfoImpl) info).getRegistration();
-                AbstractBundleContext<?> context = (AbstractBundleContext<?>) info.getBundleContext();
-                if (context.isDestroyed()) {
-                    continue;
-                }
-                // Service events must only be delivered to event listeners which can validly cast the event
-                if (!listenerReg.isAllServiceListener()) {
-                    boolean assignableToOwner = true;
-                    XBundle owner = context.getBundleState();
-                    String[] clazzes = (String[]) serviceState.getProperty(Constants.OBJECTCLASS);
-                    for (String clazz : clazzes) {
-                        if (serviceState.isAssignableTo(owner, clazz) == false) {
-                            assignableToOwner = false;
-                            break;
-                        }
-                    }
-                    if (assignableToOwner == false)
-                        continue;
+                deliverServiceEvent(listenerReg, type, serviceState, event);
+            }
+        }
+    }
+
+    private void fireServiceEventDirect(int type, ServiceState<?> serviceState) {
+        // The event is only created when the first listener gets called
+        ServiceEvent event = null;
+        String[] clazzes = (String[]) serviceState.getProperty(Constants.OBJECTCLASS);
+        for (int i = 0; i < clazzes.length; i++) {
+            if (isFirstOccurrence(clazzes, i)) {
+                for (ServiceListenerRegistration listenerReg : serviceListenerIndex.getListeners(clazzes[i])) {
+                    event = deliverServiceEvent(listenerReg, type, serviceState, event);
                 }
+            }
+        }
+        for (ServiceListenerRegistration listenerReg : serviceListenerIndex.getResidualListeners()) {
+            event = deliverServiceEvent(listenerReg, type, serviceState, event);
+        }
+    }
+
+    /**
+     * Deliver the event to the given listener if it matches.
+     *
+     * @param event The event to deliver or null if it has not been created yet
+     * @return The delivered event or the given event if the listener was not called
+     */
+    private ServiceEvent deliverServiceEvent(ServiceListenerRegistration listenerReg, int type, ServiceState<?> serviceState, ServiceEvent event) {
+        AbstractBundleContext<?> context = (AbstractBundleContext<?>) listenerReg.getBundleContext();
+        if (context == null || context.isDestroyed())
+            return event;
+
+        // Service events must only be delivered to event listeners which can validly cast the event
+        if (!listenerReg.isAllServiceListener()) {
+            XBundle owner = context.getBundleState();
+            String[] clazzes = (String[]) serviceState.getProperty(Constants.OBJECTCLASS);
+            for (String clazz : clazzes) {
+                if (serviceState.isAssignableTo(owner, clazz) == false)
+                    return event;
+            }
+        }
 
+        try {
+            ServiceListener listener = listenerReg.getListener();
+            if (listenerReg.isAllServiceListener() || listener instanceof UnfilteredServiceListener || listenerReg.filter.match(serviceState)) {
+                if (event == null)
+                    event = new ServiceEventImpl(type, serviceState);
+                long start = System.nanoTime();
                 try {
-                    String filterstr = info.getFilter();
-                    ServiceListener listener = listenerReg.getListener();
-                    if (listenerReg.isAllServiceListener() || listener instanceof UnfilteredServiceListener || listenerReg.filter.match(serviceState)) {
-                        listener.serviceChanged(event);
-                    }
+                    listener.serviceChanged(event);
+                } finally {
+                    statistics.record(listenerReg.getStats(statistics), listenerReg.getBundle(), start, true);
+                }
+            }
 
-                    // The MODIFIED_ENDMATCH event is synchronously delivered after the service properties have been modified.
-                    // This event is only delivered to listeners which were added with a non-null filter where
-                    // the filter matched the service properties prior to the modification but the filter does
-                    // not match the modified service properties.
-                    else if (filterstr != null && ServiceEvent.MODIFIED == event.getType()) {
-                        if (listenerReg.filter.match(serviceState.getPreviousProperties())) {
-                            event = new ServiceEventImpl(ServiceEvent.MODIFIED_ENDMATCH, serviceState);
-                            listener.serviceChanged(event);
-                        }
+            // The MODIFIED_ENDMATCH event is synchronously delivered after the service properties have been modified.
+            // This event is only delivered to listeners which were added with a non-null filter where
+            // the filter matched the service properties prior to the modification but the filter does
+            // not match the modified service properties.
+            else if (listenerReg.filter != NoFilter.INSTANCE && ServiceEvent.MODIFIED == type) {
+                if (listenerReg.filter.match(serviceState.getPreviousProperties())) {
+                    long start = System.nanoTime();
+                    try {
+                        listener.serviceChanged(new ServiceEventImpl(ServiceEvent.MODIFIED_ENDMATCH, serviceState));
+                    } finally {
+                        statistics.record(listenerReg.getStats(statistics), listenerReg.getBundle(), start, true);
                     }
-                } catch (Throwable th) {
-                    LOGGER.warnErrorWhileFiringServiceEvent(th, typeName, serviceState);
                 }
             }
+        } catch (Throwable th) {
+            LOGGER.warnErrorWhileFiringServiceEvent(th, ConstantsHelper.serviceEvent(type), serviceState);
+        }
+        return event;
+    }
+
+    // A service may be registered under the same class name more than once
+    private static boolean isFirstOccurrence(String[] clazzes, int index) {
+        for (int i = 0; i < index; i++) {
+            if (clazzes[i].equals(clazzes[index]))
+                return false;
         }
+        return true;
     }
 
-    private void callServieEventListenerHooks(BundleContext syscontext, Map<BundleContext, Collection<ListenerInfo>> listeners, ServiceEvent event) {
+    private void addListenerInfos(Map<BundleContext, Collection<ListenerInfo>> listeners, ServiceListenerRegistration[] registrations) {
+        for (ServiceListenerRegistration listener : registrations) {
+            BundleContext context = listener.getBundleContext();
+            if (context != null) {
+                Collection<ListenerInfo> infos = listeners.get(context);
+                if (infos == null) {
+                    infos = new ArrayList<ListenerInfo>();
+                    listeners.put(context, infos);
+                }
+                infos.add(listener.getListenerInfo());
+            }
+        }
+    }
+
+    private void callServieEventListenerHooks(List<EventListenerHook> hooks, Map<BundleContext, Collection<ListenerInfo>> listeners, ServiceEvent event) {
         // Call the registered event listener hooks
-        for (EventListenerHook hook : getServiceEventListenerHooks(syscontext)) {
+        for (EventListenerHook hook : hooks) {
+            long start = System.nanoTime();
             try {
                 hook.event(event, listeners);
             } catch (Exception ex) {
                 LOGGER.warnErrorWhileCallingEventListenerHook(ex, hook);
+            } finally {
+                recordHookCall(EventListenerHook.class, hook, start);
             }
         }
     }
 
-    private List<EventListenerHook> getServiceEventListenerHooks(BundleContext syscontext) {
-
-        List<EventListenerHook> hooks = new ArrayList<EventListenerHook>();
-        Collection<ServiceReference<EventListenerHook>> srefs = null;
-        try {
-            srefs = syscontext.getServiceReferences(EventListenerHook.class, null);
-        } catch (InvalidSyntaxException e) {
-            // ignore
-        }
-
-        // The calling order of the hooks is defined by the reversed compareTo ordering of their Service
-        // Reference objects. That is, the service with the highest ranking number is called first.
-        List<ServiceReference<EventListenerHook>> sortedRefs = new ArrayList<ServiceReference<EventListenerHook>>(srefs);
-        Collections.reverse(sortedRefs);
-
-        for (ServiceReference<EventListenerHook> sref : sortedRefs)
-            hooks.add(syscontext.getService(sref));
-
-        return hooks;
-    }
-
-    private void callServiceEventHooks(BundleContext syscontext, Map<BundleContext, Collection<ListenerInfo>> listeners, final ServiceEvent event) {
+    private void callServiceEventHooks(List<org.osgi.framework.hooks.service.EventHook> eventHooks, Map<BundleContext, Collection<ListenerInfo>> listeners, final ServiceEvent event) {
 
         Collection<BundleContext> contexts = new RemoveOnlyCollection<BundleContext>(listeners.keySet());
 
         // Call the registered event hooks
-        List<org.osgi.framework.hooks.service.EventHook> eventHooks = getServiceEventHooks(syscontext);
         for (org.osgi.framework.hooks.service.EventHook hook : eventHooks) {
+            long start = System.nanoTime();
             try {
                 hook.event(event, contexts);
             } catch (Exception ex) {
                 LOGGER.warnErrorWhileCallingEventHook(ex, hook);
+            } finally {
+                recordHookCall(org.osgi.framework.hooks.service.EventHook.class, hook, start);
             }
         }
 
@@ -683,24 +786,9 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         }
     }
 
-    private List<org.osgi.framework.hooks.service.EventHook> getServiceEventHooks(BundleContext syscontext) {
-        List<org.osgi.framework.hooks.service.EventHook> hooks = new ArrayList<org.osgi.framework.hooks.service.EventHook>();
-        Collection<ServiceReference<org.osgi.framework.hooks.service.EventHook>> srefs = null;
-        try {
-            srefs = syscontext.getServiceReferences(org.osgi.framework.hooks.service.EventHook.class, null);
-        } catch (InvalidSyntaxException e) {
-            // ignore
-        }
-        if (srefs != null && !srefs.isEmpty()) {
-            // The calling order of the hooks is defined by the reversed compareTo ordering of their Service
-            // Reference objects. That is, the service with the highest ranking number is called first.
-            List<ServiceReference<org.osgi.framework.hooks.service.EventHook>> sorted = new ArrayList<ServiceReference<org.osgi.framework.hooks.service.EventHook>>(srefs);
-            Collections.reverse(sorted);
-
-            for (ServiceReference<org.osgi.framework.hooks.service.EventHook> sref : sorted)
-                hooks.add(syscontext.getService(sref));
-        }
-        return hooks;
+    private void recordHookCall(Class<?> hookType, Object hook, long start) {
+        // The registering bundle of a hook is not known here, hooks are reported by their class
+        statistics.record(statistics.getStats(hookType.getSimpleName(), null, hook), null, start, true);
     }
 
     /**
@@ -713,6 +801,8 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         private final ServiceListener listener;
         private final Filter filter;
         private final ListenerInfo info;
+        private final String objectClass;
+        private EventListenerStatisticsImpl.ListenerStats stats;
 
         // Any access control context
         AccessControlContext accessControlContext;
@@ -726,6 +816,7 @@ final class FrameworkEventsImpl implements FrameworkEvents {
             this.filter = filter;
             this.bundleContext = bundle.getBundleContext();
             this.info = new ListenerInfoImpl(bundleContext, this);
+            this.objectClass = getObjectClass(listener, filter);
             if (System.getSecurityManager() != null)
                 accessControlContext = AccessController.getContext();
         }
@@ -746,6 +837,27 @@ final class FrameworkEventsImpl implements FrameworkEvents {
             return info;
         }
 
+        EventListenerStatisticsImpl.ListenerStats getStats(EventListenerStatisticsImpl statistics) {
+            if (stats == null)
+                stats = statistics.getStats(EventListenerStatisticsImpl.SERVICE_LISTENER, bundle, listener);
+            return stats;
+        }
+
+        /**
+         * The class name that the filter requires or null if the listener must see every service event
+         */
+        String getObjectClass() {
+            return objectClass;
+        }
+
+        private static String getObjectClass(ServiceListener listener, Filter filter) {
+            // An UnfilteredServiceListener receives events regardless of its filter
+            if (filter == NoFilter.INSTANCE || listener instanceof UnfilteredServiceListener)
+                return null;
+
+            return ServicePropertyIndex.getObjectClass(filter.toString());
+        }
+
         boolean isAllServiceListener() {
             return (listener instanceof AllServiceListener);
         }
@@ -776,6 +888,7 @@ final class FrameworkEventsImpl implements FrameworkEvents {
         private final BundleListener listener;
         private final BundleContext bundleContext;
         private final XBundle bundle;
+        private EventListenerStatisticsImpl.ListenerStats stats;
 
         BundleListenerRegistration(XBundle bundle, BundleListener listener) {
             this.listener = listener;
@@ -787,6 +900,12 @@ final class FrameworkEventsImpl implements FrameworkEvents {
             return listener;
         }
 
+        EventListenerStatisticsImpl.ListenerStats getStats(EventListenerStatisticsImpl statistics) {
+            if (stats == null)
+                stats = statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, bundle, listener);
+            return stats;
+        }
+
         XBundle getBundle() {
             return bundle;
         }
@@ -21,12 +21,17 @@
  */
 package org.jboss.osgi.framework.internal;
 
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.util.concurrent.ExecutorService;
+
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
 import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.spi.ExecutorServicePlugin;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.IntegrationServices;
@@ -48,6 +53,7 @@ import org.osgi.framework.ServiceListener;
 final class FrameworkEventsPlugin extends ExecutorServicePlugin<FrameworkEvents> {
 
     private final InjectedValue<LockManager> injectedLockManager = new InjectedValue<LockManager>();
+    private ExecutorService bundleEventExecutor;
 
     FrameworkEventsPlugin() {
         super(IntegrationServices.FRAMEWORK_EVENTS_PLUGIN, "Framework Events Thread");
@@ -63,7 +69,24 @@ final class FrameworkEventsPlugin extends ExecutorServicePlugin<FrameworkEvents>
     @Override
     protected FrameworkEvents createServiceValue(StartContext startContext) throws StartException {
         LockManager lockManager = injectedLockManager.getValue();
-        return new FrameworkEventsImpl((BundleManagerPlugin) getBundleManager(), getExecutorService(), lockManager);
+        int threads = getBundleEventThreads();
+        if (threads > 0) {
+            bundleEventExecutor = BundleEventDispatcher.createExecutorService(threads);
+            getBundleManager().registerExecutorService(bundleEventExecutor);
+        }
+        return new FrameworkEventsImpl((BundleManagerPlugin) getBundleManager(), getExecutorService(), bundleEventExecutor, lockManager);
+    }
+
+    private int getBundleEventThreads() {
+        Object value = getBundleManager().getProperty(Constants.PROPERTY_BUNDLE_EVENT_THREADS);
+        if (value == null)
+            return 0;
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException ex) {
+            LOGGER.debugf("Invalid value for %s: %s", Constants.PROPERTY_BUNDLE_EVENT_THREADS, value);
+            return 0;
+        }
     }
 
     @Override
@@ -72,5 +95,10 @@ final class FrameworkEventsPlugin extends ExecutorServicePlugin<FrameworkEvents>
         events.removeAllBundleListeners();
         events.removeAllFrameworkListeners();
         events.removeAllServiceListeners();
+        if (bundleEventExecutor != null) {
+            bundleEventExecutor.shutdown();
+            getBundleManager().unregisterExecutorService(bundleEventExecutor);
+            bundleEventExecutor = null;
+        }
     }
 }
\ No newline at end of file
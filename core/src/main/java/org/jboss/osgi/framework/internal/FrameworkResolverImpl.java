@@ -21,11 +21,13 @@
  */
 package org.jboss.osgi.framework.internal;
 
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.InternalConstants.NATIVE_LIBRARY_METADATA_KEY;
 import static org.jboss.osgi.resolver.ResolverMessages.MESSAGES;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,6 +35,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.framework.spi.BundleManager;
@@ -54,6 +61,7 @@ import org.jboss.osgi.resolver.XResource;
 import org.jboss.osgi.resolver.XResourceCapability;
 import org.jboss.osgi.resolver.XWiring;
 import org.jboss.osgi.resolver.spi.AbstractBundleWire;
+import org.jboss.osgi.resolver.spi.AbstractResolver;
 import org.jboss.osgi.resolver.spi.ResolverHookProcessor;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -84,14 +92,24 @@ final class FrameworkResolverImpl implements XResolver {
     private final FrameworkModuleLoader moduleLoader;
     private final LockManager lockManager;
     private final XResolver resolver;
+    private final ExecutorService executorService;
+    private final ResolutionCache resolutionCache;
+    // Serializes the calls to the shared resolver, which is not known to be re-entrant
+    private final Object resolverLock = new Object();
 
     FrameworkResolverImpl(BundleManager bundleManager, NativeCode nativeCode, ModuleManager moduleManager, FrameworkModuleLoader moduleLoader, XResolver resolver, LockManager lockManager) {
+        this(bundleManager, nativeCode, moduleManager, moduleLoader, resolver, lockManager, null, null);
+    }
+
+    FrameworkResolverImpl(BundleManager bundleManager, NativeCode nativeCode, ModuleManager moduleManager, FrameworkModuleLoader moduleLoader, XResolver resolver, LockManager lockManager, ExecutorService executorService, ResolutionCache resolutionCache) {
         this.bundleManager = (BundleManagerPlugin) bundleManager;
         this.nativeCode = nativeCode;
         this.moduleManager = moduleManager;
         this.moduleLoader = moduleLoader;
         this.lockManager = lockManager;
         this.resolver = resolver;
+        this.executorService = executorService;
+        this.resolutionCache = resolutionCache;
     }
 
     @Override
@@ -100,12 +118,12 @@ final class FrameworkResolverImpl implements XResolver {
     }
 
     @Override
-    public synchronized Map<Resource, List<Wire>> resolve(ResolveContext resolveContext) throws ResolutionException {
+    public Map<Resource, List<Wire>> resolve(ResolveContext resolveContext) throws ResolutionException {
         return resolveInternal((XResolveContext) resolveContext, false);
     }
 
     @Override
-    public synchronized Map<Resource, List<Wire>> resolveAndApply(XResolveContext resolveContext) throws ResolutionException {
+    public Map<Resource, List<Wire>> resolveAndApply(XResolveContext resolveContext) throws ResolutionException {
         return resolveInternal(resolveContext, true);
     }
 
@@ -116,66 +134,276 @@ final class FrameworkResolverImpl implements XResolver {
         if (ResolverHookProcessor.getCurrentProcessor() != null)
             throw MESSAGES.illegalStateResolverHookCannotTriggerResolveOperation();
 
-        XEnvironment env = resolveContext.getEnvironment();
         BundleContext syscontext = bundleManager.getSystemContext();
-        Collection<Resource> manres = new HashSet<Resource>(resolveContext.getMandatoryResources());
-        Collection<Resource> optres = new HashSet<Resource>(resolveContext.getOptionalResources());
         ResolverHookProcessor hookregs = new ResolverHookProcessor(syscontext, bundleManager.getBundles(Bundle.INSTALLED));
         try {
-            // Recreate the {@link ResolveContext} with filtered resources
-            if (hookregs.hasResolverHooks()) {
-                hookregs.begin(manres, optres);
-                hookregs.filterResolvable();
-                hookregs.filterSingletonCollisions(new ResolverHookProcessor.SingletonLocator() {
-                    @Override
-                    public Collection<BundleCapability> findCollisionCandidates(BundleCapability viewpoint) {
-                        Collection<BundleCapability> result = new HashSet<BundleCapability>();
-                        if (viewpoint instanceof XResourceCapability) {
-                            String symbolicName = ((XResourceCapability) viewpoint).getName();
-                            for (XBundle bundle : bundleManager.getBundles(symbolicName, null)) {
-                                XBundleRevision xres = bundle.getBundleRevision();
-                                List<BundleCapability> bcaps = xres.getDeclaredCapabilities(viewpoint.getNamespace());
-                                if (bcaps.size() == 1) {
-                                    BundleCapability bcap = bcaps.get(0);
-                                    String spec = bcap.getDirectives().get(Constants.SINGLETON_DIRECTIVE);
-                                    if (bcap != viewpoint && Boolean.parseBoolean(spec)) {
-                                        result.add(bcap);
-                                    }
+            // Resolver hooks see one resolve operation at a time
+            if (executorService == null || hookregs.hasResolverHooks()) {
+                synchronized (this) {
+                    return resolveSerial(resolveContext, hookregs, applyResults);
+                }
+            } else {
+                return resolveConcurrent(resolveContext, applyResults);
+            }
+        } finally {
+            hookregs.end();
+        }
+    }
+
+    private Map<Resource, List<Wire>> resolveSerial(XResolveContext resolveContext, ResolverHookProcessor hookregs, boolean applyResults) throws ResolutionException {
+        XEnvironment env = resolveContext.getEnvironment();
+        Collection<Resource> manres = new HashSet<Resource>(resolveContext.getMandatoryResources());
+        Collection<Resource> optres = new HashSet<Resource>(resolveContext.getOptionalResources());
+
+        // Recreate the {@link ResolveContext} with filtered resources
+        if (hookregs.hasResolverHooks()) {
+            hookregs.begin(manres, optres);
+            hookregs.filterResolvable();
+            hookregs.filterSingletonCollisions(new ResolverHookProcessor.SingletonLocator() {
+                @Override
+                public Collection<BundleCapability> findCollisionCandidates(BundleCapability viewpoint) {
+                    Collection<BundleCapability> result = new HashSet<BundleCapability>();
+                    if (viewpoint instanceof XResourceCapability) {
+                        String symbolicName = ((XResourceCapability) viewpoint).getName();
+                        for (XBundle bundle : bundleManager.getBundles(symbolicName, null)) {
+                            XBundleRevision xres = bundle.getBundleRevision();
+                            List<BundleCapability> bcaps = xres.getDeclaredCapabilities(viewpoint.getNamespace());
+                            if (bcaps.size() == 1) {
+                                BundleCapability bcap = bcaps.get(0);
+                                String spec = bcap.getDirectives().get(Constants.SINGLETON_DIRECTIVE);
+                                if (bcap != viewpoint && Boolean.parseBoolean(spec)) {
+                                    result.add(bcap);
                                 }
                             }
                         }
-                        return result;
                     }
-                });
-                resolveContext = resolver.createResolveContext(env, getFilteredResources(hookregs, manres), getFilteredResources(hookregs, optres));
-            } else {
-                filterSingletons(manres, optres);
-                resolveContext = resolver.createResolveContext(env, manres, optres);
+                    return result;
+                }
+            });
+            resolveContext = resolver.createResolveContext(env, getFilteredResources(hookregs, manres), getFilteredResources(hookregs, optres));
+        } else {
+            filterSingletons(manres, optres);
+            resolveContext = resolver.createResolveContext(env, manres, optres);
+        }
+
+        Map<Resource, List<Wire>> wiremap;
+
+        LockContext lockContext = null;
+        try {
+            FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
+            lockContext = lockManager.lockItems(Method.RESOLVE, wireLock);
+            wiremap = hookregs.hasResolverHooks() ? null : getCachedWiremap(env, manres, optres);
+            if (wiremap == null) {
+                wiremap = resolveShared(resolveContext);
+            }
+            if (applyResults) {
+                applyResolverResults(env, wiremap);
+            }
+        } finally {
+            lockManager.unlockItems(lockContext);
+        }
+
+        // Send the {@link BundleEvent.RESOLVED} event outside the lock
+        if (applyResults) {
+            sendBundleResolvedEvents(wiremap);
+        }
+
+        return wiremap;
+    }
+
+    /**
+     * Resolve the independent components of the request concurrently and outside the {@link FrameworkWiringLock}.
+     *
+     * The wiring lock is only obtained to verify that the result still fits the environment and to apply it.
+     * A result that was invalidated by a concurrent resolve or uninstall is resolved again under the lock.
+     */
+    private Map<Resource, List<Wire>> resolveConcurrent(XResolveContext resolveContext, boolean applyResults) throws ResolutionException {
+        XEnvironment env = resolveContext.getEnvironment();
+        Collection<Resource> manres = new HashSet<Resource>(resolveContext.getMandatoryResources());
+        Collection<Resource> optres = new HashSet<Resource>(resolveContext.getOptionalResources());
+        filterSingletons(manres, optres);
+
+        Map<Resource, List<Wire>> wiremap = getCachedWiremap(env, manres, optres);
+        if (wiremap == null) {
+            wiremap = resolveComponents(env, manres, optres);
+        }
+
+        LockContext lockContext = null;
+        try {
+            FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
+            lockContext = lockManager.lockItems(Method.RESOLVE, wireLock);
+            if (!isApplicable(env, wiremap)) {
+                LOGGER.debugf("Resolve again, environment changed concurrently: %s", wiremap.keySet());
+                wiremap = resolveShared(resolver.createResolveContext(env, manres, optres));
+            }
+            if (applyResults) {
+                applyResolverResults(env, wiremap);
             }
+        } finally {
+            lockManager.unlockItems(lockContext);
+        }
 
-            Map<Resource, List<Wire>> wiremap;
+        // Send the {@link BundleEvent.RESOLVED} event outside the lock
+        if (applyResults) {
+            sendBundleResolvedEvents(wiremap);
+        }
+
+        return wiremap;
+    }
+
+    private Map<Resource, List<Wire>> resolveComponents(final XEnvironment env, Collection<Resource> manres, Collection<Resource> optres) throws ResolutionException {
+        XResolveContext context = resolver.createResolveContext(env, manres, optres);
+        List<ResolveComponent> components = ResolveComponent.partition(context, manres, optres);
+
+        // Components can only be resolved concurrently with a resolver instance per component
+        if (components.size() < 2 || resolver.getClass() != AbstractResolver.class) {
+            return resolveShared(context);
+        }
 
-            LockContext lockContext = null;
+        LOGGER.debugf("Resolve %d independent components", components.size());
+
+        // The first component is resolved by the calling thread
+        List<Future<Map<Resource, List<Wire>>>> futures = new ArrayList<Future<Map<Resource, List<Wire>>>>();
+        for (final ResolveComponent comp : components.subList(1, components.size())) {
+            futures.add(executorService.submit(new Callable<Map<Resource, List<Wire>>>() {
+                @Override
+                public Map<Resource, List<Wire>> call() throws ResolutionException {
+                    return resolveComponent(env, comp);
+                }
+            }));
+        }
+        ResolveComponent first = components.get(0);
+        Map<Resource, List<Wire>> result = new LinkedHashMap<Resource, List<Wire>>();
+        ResolutionException failure = null;
+        try {
+            result.putAll(resolveComponent(env, first));
+        } catch (ResolutionException ex) {
+            failure = ex;
+        }
+        for (Future<Map<Resource, List<Wire>>> future : futures) {
             try {
-                FrameworkWiringLock wireLock = lockManager.getItemForType(FrameworkWiringLock.class);
-                lockContext = lockManager.lockItems(Method.RESOLVE, wireLock);
-                wiremap = resolver.resolve(resolveContext);
-                if (applyResults) {
-                    applyResolverResults(env, wiremap);
+                result.putAll(future.get());
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof ResolutionException) {
+                    if (failure == null)
+                        failure = (ResolutionException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IllegalStateException(cause);
                 }
-            } finally {
-                lockManager.unlockItems(lockContext);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ResolutionException(ex);
             }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
 
-            // Send the {@link BundleEvent.RESOLVED} event outside the lock
-            if (applyResults) {
-                sendBundleResolvedEvents(wiremap);
+    private Map<Resource, List<Wire>> resolveComponent(XEnvironment env, ResolveComponent comp) throws ResolutionException {
+        XResolver componentResolver = new AbstractResolver();
+        return componentResolver.resolve(componentResolver.createResolveContext(env, comp.getMandatory(), comp.getOptional()));
+    }
+
+    private Map<Resource, List<Wire>> resolveShared(XResolveContext context) throws ResolutionException {
+        synchronized (resolverLock) {
+            return resolver.resolve(context);
+        }
+    }
+
+    /**
+     * Get the stored wiring of a previous framework run while the framework is starting up
+     */
+    private Map<Resource, List<Wire>> getCachedWiremap(XEnvironment env, Collection<Resource> manres, Collection<Resource> optres) {
+        if (resolutionCache == null || bundleManager.isFrameworkActive())
+            return null;
+        Set<Resource> nores = Collections.emptySet();
+        Map<Resource, Wiring> wirings = resolver.createResolveContext(env, nores, nores).getWirings();
+        Map<Resource, List<Wire>> wiremap = resolutionCache.getWiremap(env, wirings, manres, optres);
+        if (wiremap != null) {
+            LOGGER.debugf("Apply stored wiring for: %s", wiremap.keySet());
+        }
+        return wiremap;
+    }
+
+    /**
+     * Make the stored wiring applicable if it matches the environment with all persistent bundles installed
+     */
+    void verifyResolutionCache(XEnvironment env) {
+        if (resolutionCache != null) {
+            resolutionCache.verify(env);
+        }
+    }
+
+    /**
+     * Store the current wiring for the next framework startup
+     */
+    void storeResolutionCache(XEnvironment env) {
+        if (resolutionCache != null) {
+            Set<Resource> nores = Collections.emptySet();
+            resolutionCache.store(env, resolver.createResolveContext(env, nores, nores).getWirings());
+        }
+    }
+
+    /**
+     * True if none of the resources was resolved in the meantime, all providers are still available
+     * and the result does not add a second singleton with the same symbolic name
+     */
+    private boolean isApplicable(XEnvironment env, Map<Resource, List<Wire>> wiremap) {
+        Set<Resource> nores = Collections.emptySet();
+        Map<Resource, Wiring> wirings = resolver.createResolveContext(env, nores, nores).getWirings();
+        for (Entry<Resource, List<Wire>> entry : wiremap.entrySet()) {
+            Resource res = entry.getKey();
+            if (wirings.containsKey(res) || !isCurrentRevision(res))
+                return false;
+            for (Wire wire : entry.getValue()) {
+                Resource provider = wire.getProvider();
+                if (!wiremap.containsKey(provider) && !wirings.containsKey(provider))
+                    return false;
+                if (!isCurrentRevision(provider))
+                    return false;
             }
+        }
+        return !hasSingletonCollision(wiremap, wirings);
+    }
 
-            return wiremap;
-        } finally {
-            hookregs.end();
+    /**
+     * True if the result contains two singletons with the same symbolic name, or a singleton whose
+     * symbolic name is already taken by a resolved singleton. This can happen when concurrent requests
+     * or independent components resolve different revisions of the same singleton.
+     */
+    private boolean hasSingletonCollision(Map<Resource, List<Wire>> wiremap, Map<Resource, Wiring> wirings) {
+        Map<String, Resource> singletons = new HashMap<String, Resource>();
+        for (Resource res : wiremap.keySet()) {
+            String name = getSingletonName(res);
+            if (name != null && singletons.put(name, res) != null)
+                return true;
+        }
+        if (singletons.isEmpty())
+            return false;
+        for (Resource res : wirings.keySet()) {
+            String name = getSingletonName(res);
+            if (name != null && singletons.containsKey(name))
+                return true;
+        }
+        return false;
+    }
+
+    private String getSingletonName(Resource res) {
+        XIdentityCapability icap = ((XResource) res).getIdentityCapability();
+        return icap != null && icap.isSingleton() ? icap.getName() : null;
+    }
+
+    private boolean isCurrentRevision(Resource res) {
+        if (res instanceof XBundleRevision) {
+            XBundle bundle = ((XBundleRevision) res).getBundle();
+            return bundle == null || (bundle.getState() != Bundle.UNINSTALLED && bundle.getBundleRevision() == res);
         }
+        return true;
     }
 
     private Collection<? extends Resource> getFilteredResources(ResolverHookProcessor hookregs, Collection<? extends Resource> resources) {
@@ -21,11 +21,20 @@
  */
 package org.jboss.osgi.framework.internal;
 
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.spi.AbstractIntegrationService;
 import org.jboss.osgi.framework.spi.BundleManager;
@@ -34,6 +43,8 @@ import org.jboss.osgi.framework.spi.IntegrationServices;
 import org.jboss.osgi.framework.spi.LockManager;
 import org.jboss.osgi.framework.spi.ModuleManager;
 import org.jboss.osgi.framework.spi.NativeCode;
+import org.jboss.osgi.framework.spi.StorageManager;
+import org.jboss.osgi.resolver.XEnvironment;
 import org.jboss.osgi.resolver.XResolver;
 
 /**
@@ -50,6 +61,9 @@ final class FrameworkResolverPlugin extends AbstractIntegrationService<XResolver
     private final InjectedValue<FrameworkModuleLoader> injectedModuleLoader = new InjectedValue<FrameworkModuleLoader>();
     private final InjectedValue<LockManager> injectedLockManager = new InjectedValue<LockManager>();
     private final InjectedValue<XResolver> injectedResolver = new InjectedValue<XResolver>();
+    private final InjectedValue<StorageManager> injectedStorageManager = new InjectedValue<StorageManager>();
+    private final InjectedValue<XEnvironment> injectedEnvironment = new InjectedValue<XEnvironment>();
+    private ExecutorService resolverExecutor;
 
     FrameworkResolverPlugin() {
         super(Services.RESOLVER);
@@ -63,6 +77,8 @@ final class FrameworkResolverPlugin extends AbstractIntegrationService<XResolver
         builder.addDependency(IntegrationServices.MODULE_MANGER_PLUGIN, ModuleManager.class, injectedModuleManager);
         builder.addDependency(IntegrationServices.FRAMEWORK_MODULE_LOADER_PLUGIN, FrameworkModuleLoader.class, injectedModuleLoader);
         builder.addDependency(IntegrationServices.LOCK_MANAGER_PLUGIN, LockManager.class, injectedLockManager);
+        builder.addDependency(IntegrationServices.STORAGE_MANAGER_PLUGIN, StorageManager.class, injectedStorageManager);
+        builder.addDependency(Services.ENVIRONMENT, XEnvironment.class, injectedEnvironment);
         builder.setInitialMode(Mode.ON_DEMAND);
     }
 
@@ -74,6 +90,48 @@ final class FrameworkResolverPlugin extends AbstractIntegrationService<XResolver
         FrameworkModuleLoader moduleLoader = injectedModuleLoader.getValue();
         XResolver resolver = injectedResolver.getValue();
         LockManager lockManager = injectedLockManager.getValue();
-        return new FrameworkResolverImpl(bundleManager, nativeCode, moduleManager, moduleLoader, resolver, lockManager);
+        int threads = getResolverThreads(bundleManager);
+        if (threads > 0) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            resolverExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable run) {
+                    Thread thread = new Thread(run);
+                    thread.setName("Framework Resolver Thread-" + threadCount.incrementAndGet());
+                    return thread;
+                }
+            });
+            bundleManager.registerExecutorService(resolverExecutor);
+        }
+        ResolutionCache resolutionCache = null;
+        Object cacheValue = bundleManager.getProperty(Constants.PROPERTY_RESOLUTION_CACHE);
+        if (cacheValue != null && Boolean.parseBoolean(String.valueOf(cacheValue))) {
+            StorageManager storageManager = injectedStorageManager.getValue();
+            resolutionCache = new ResolutionCache(storageManager.getStorageArea(), ResolutionCache.getSystemProperties(bundleManager.getProperties()));
+            resolutionCache.load();
+        }
+        return new FrameworkResolverImpl(bundleManager, nativeCode, moduleManager, moduleLoader, resolver, lockManager, resolverExecutor, resolutionCache);
+    }
+
+    private int getResolverThreads(BundleManager bundleManager) {
+        Object value = bundleManager.getProperty(Constants.PROPERTY_RESOLVER_THREADS);
+        if (value == null)
+            return 0;
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException ex) {
+            LOGGER.debugf("Invalid value for %s: %s", Constants.PROPERTY_RESOLVER_THREADS, value);
+            return 0;
+        }
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        ((FrameworkResolverImpl) getValue()).storeResolutionCache(injectedEnvironment.getValue());
+        if (resolverExecutor != null) {
+            resolverExecutor.shutdown();
+            injectedBundleManager.getValue().unregisterExecutorService(resolverExecutor);
+            resolverExecutor = null;
+        }
     }
 }
@@ -54,6 +54,9 @@ final class HostBundleClassLoader extends BundleReferenceClassLoader<UserBundleS
     @Override
     public Class<?> loadClassLocal(String className, boolean resolve) throws ClassNotFoundException {
         WeavingContext context = WeavingContext.create(getBundleState());
+        if (context == null)
+            return super.loadClassLocal(className, resolve);
+
         try {
             return super.loadClassLocal(className, resolve);
         } catch (ClassFormatError cfe) {
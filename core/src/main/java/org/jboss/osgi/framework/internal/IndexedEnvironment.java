@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XResource;
+import org.jboss.osgi.resolver.spi.AbstractEnvironment;
+
+/**
+ * An {@link AbstractEnvironment} that maintains a {@link BundleIndex} and a {@link PackageIndex}
+ * for the installed bundle revisions.
+ *
+ * Resources may be installed through the framework or directly through the environment,
+ * both paths are captured here.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public final class IndexedEnvironment extends AbstractEnvironment {
+
+    private final BundleIndex bundleIndex = new BundleIndex();
+    private final PackageIndex packageIndex = new PackageIndex();
+
+    @Override
+    public synchronized void installResources(XResource... resources) {
+        super.installResources(resources);
+        for (XResource res : resources) {
+            if (res instanceof XBundleRevision) {
+                packageIndex.addRevision((XBundleRevision) res);
+                bundleIndex.addRevision((XBundleRevision) res);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void uninstallResources(XResource... resources) {
+        super.uninstallResources(resources);
+        for (XResource res : resources) {
+            if (res instanceof XBundleRevision) {
+                bundleIndex.removeRevision((XBundleRevision) res);
+                packageIndex.removeRevision((XBundleRevision) res);
+            }
+        }
+    }
+
+    BundleIndex getBundleIndex() {
+        return bundleIndex;
+    }
+
+    PackageIndex getPackageIndex() {
+        return packageIndex;
+    }
+}
@@ -25,17 +25,20 @@ import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.osgi.framework.spi.FrameworkWiringLock;
 import org.jboss.osgi.framework.spi.LockException;
 import org.jboss.osgi.framework.spi.LockManager;
+import org.osgi.framework.Bundle;
 
 
 
@@ -47,10 +50,32 @@ import org.jboss.osgi.framework.spi.LockManager;
  */
 public final class LockManagerImpl implements LockManager {
 
+    // The interval in which a waiting thread checks whether it was chosen to fail a deadlock
+    private static final long DEADLOCK_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
     private final FrameworkWiringLock wiringLock = new FrameworkWiringLock();
     private final Map<Class<? extends LockableItem>, LockableItem> otherLocks = new HashMap<Class<? extends LockableItem>, LockableItem>();
 
     private static ThreadLocal<Stack<LockContext>> lockContextAssociation = new ThreadLocal<Stack<LockContext>>();
+    private final LockWaitGraph waitGraph = new LockWaitGraph();
+    private volatile LockProfiler profiler;
+
+    /**
+     * Enable the recording of lock wait and hold times
+     */
+    synchronized LockProfiler enableProfiling() {
+        if (profiler == null) {
+            profiler = new LockProfiler();
+        }
+        return profiler;
+    }
+
+    /**
+     * The lock profiler or null if profiling is not enabled
+     */
+    LockProfiler getProfiler() {
+        return profiler;
+    }
 
     @Override
     @SuppressWarnings("unchecked")
@@ -90,27 +115,23 @@ public final class LockManagerImpl implements LockManager {
         return lockItemsInternal(method, timeout, unit, items);
     }
 
-    private synchronized LockContext lockItemsInternal(Method method, long timeout, TimeUnit unit, LockableItem... items) {
+    private LockContext lockItemsInternal(Method method, long timeout, TimeUnit unit, LockableItem... items) {
 
         LockContextImpl context = new LockContextImpl(method, items);
 
-        // Try to lock all items
-        long start = System.currentTimeMillis();
-        while (!context.lockItems()) {
-
-            // Timeout if we have waited long enough
-            long now = System.currentTimeMillis();
-            if (now >= start + unit.toMillis(timeout))
-                throw MESSAGES.cannotObtainLockTimely(new TimeoutException(), context);
-
-            LOGGER.tracef("LockManager lock: %s waiting ...", context);
-
-            try {
-                wait(unit.toMillis(timeout));
-                LOGGER.tracef("LockManager continue ...");
-            } catch (InterruptedException ex) {
-                throw MESSAGES.cannotObtainLockTimely(ex, context);
+        // Lock all items, a contended item is waited for on its own lock queue
+        LockProfiler profiler = this.profiler;
+        long start = System.nanoTime();
+        try {
+            context.lockItems(start + unit.toNanos(timeout), waitGraph);
+        } catch (LockException ex) {
+            if (profiler != null) {
+                profiler.timedOut(context, System.nanoTime() - start);
             }
+            throw ex;
+        }
+        if (profiler != null) {
+            profiler.locked(context, System.nanoTime() - start);
         }
 
         LOGGER.tracef("LockManager locked: %s", context);
@@ -120,6 +141,7 @@ public final class LockManagerImpl implements LockManager {
         if (contextStack == null) {
             contextStack = new Stack<LockContext>();
             lockContextAssociation.set(contextStack);
+            waitGraph.addHolder(contextStack);
         }
         contextStack.push(context);
 
@@ -127,38 +149,85 @@ public final class LockManagerImpl implements LockManager {
     }
 
     @Override
-    public synchronized void unlockItems(LockContext context) {
+    public void unlockItems(LockContext context) {
 
         if (context != null) {
 
-            // Unlock all items
-            for (LockableItem item : context.getItems()) {
-                ReentrantLock lock = item.getReentrantLock();
+            // Unlock all items in reverse acquisition order
+            LockableItem[] ordered = ((LockContextImpl) context).ordered;
+            for (int i = ordered.length - 1; i >= 0; i--) {
+                ReentrantLock lock = ordered[i].getReentrantLock();
                 lock.unlock();
             }
 
             LOGGER.tracef("LockManager unlocked: %s", context);
 
+            LockProfiler profiler = this.profiler;
+            if (profiler != null) {
+                profiler.unlocked((LockContextImpl) context);
+            }
+
             // Pop the current context stack
             Stack<LockContext> contextStack = lockContextAssociation.get();
             contextStack.pop();
             if (contextStack.isEmpty()) {
                 lockContextAssociation.remove();
+                waitGraph.removeHolder();
             }
         }
-
-        // Notify all waiting threads
-        notifyAll();
     }
 
+    /**
+     * The canonical lock order: bundles by id, then the wiring lock, then other items by type
+     */
+    static final Comparator<LockableItem> CANONICAL_ORDER = new Comparator<LockableItem>() {
+        @Override
+        public int compare(LockableItem o1, LockableItem o2) {
+            if (o1 == o2)
+                return 0;
+            int rank1 = rank(o1);
+            int rank2 = rank(o2);
+            if (rank1 != rank2)
+                return rank1 < rank2 ? -1 : 1;
+            if (rank1 == 0) {
+                long id1 = ((Bundle) o1).getBundleId();
+                long id2 = ((Bundle) o2).getBundleId();
+                if (id1 != id2)
+                    return id1 < id2 ? -1 : 1;
+            }
+            int result = o1.getClass().getName().compareTo(o2.getClass().getName());
+            if (result == 0) {
+                int hash1 = System.identityHashCode(o1);
+                int hash2 = System.identityHashCode(o2);
+                result = hash1 < hash2 ? -1 : (hash1 == hash2 ? 0 : 1);
+            }
+            return result;
+        }
+
+        private int rank(LockableItem item) {
+            if (item instanceof Bundle)
+                return 0;
+            if (item instanceof FrameworkWiringLock)
+                return 1;
+            return 2;
+        }
+    };
+
     static class LockContextImpl implements LockContext {
 
+        private static final AtomicLong sequenceGenerator = new AtomicLong();
+
         final List<LockableItem> items;
+        final LockableItem[] ordered;
         final Method method;
+        final long sequence = sequenceGenerator.incrementAndGet();
+        volatile long lockedNanos;
 
         LockContextImpl(Method method, LockableItem... items) {
             this.items = Arrays.asList(items);
+            this.ordered = items.clone();
             this.method = method;
+            Arrays.sort(ordered, CANONICAL_ORDER);
         }
 
         @Override
@@ -171,31 +240,75 @@ public final class LockManagerImpl implements LockManager {
             return method;
         }
 
-        boolean lockItems() {
+        /**
+         * Lock all items in canonical order.
+         *
+         * Only non-blocking attempts are made while holding items of this context. On contention all items of this
+         * context are released and the thread parks on the queue of the contended item until it becomes available.
+         * A released item therefore only wakes the threads that actually wait for it.
+         *
+         * A wait that closes a cycle in the wait-for graph fails the youngest lock request of that cycle.
+         */
+        void lockItems(long deadline, LockWaitGraph waitGraph) {
+            ReentrantLock parked = null;
+            try {
+                while (true) {
+                    int index = 0;
+                    for (; index < ordered.length; index++) {
+                        if (!ordered[index].getReentrantLock().tryLock()) {
+                            break;
+                        }
+                    }
 
-            // Try to lock all items
-            int index = -1;
-            for (LockableItem item : items) {
-                ReentrantLock lock = item.getReentrantLock();
-                if (!lock.tryLock()) {
-                    break;
-                }
-                index++;
-            }
+                    // All items locked
+                    if (index == ordered.length) {
+                        return;
+                    }
 
-            // All items locked
-            if (index + 1 == items.size()) {
-                return true;
-            }
+                    // Unlock the locked items
+                    LockableItem contendedItem = ordered[index];
+                    ReentrantLock contended = contendedItem.getReentrantLock();
+                    for (index--; index >= 0; index--) {
+                        ordered[index].getReentrantLock().unlock();
+                    }
+                    if (parked != null) {
+                        parked.unlock();
+                        parked = null;
+                    }
 
-            // Unlock the locked items
-            for (; index >= 0; index--) {
-                LockableItem item = items.get(index);
-                ReentrantLock lock = item.getReentrantLock();
-                lock.unlock();
-            }
+                    // Timeout if we have waited long enough
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        throw MESSAGES.cannotObtainLockTimely(new TimeoutException(), this);
+
+                    LOGGER.tracef("LockManager lock: %s waiting ...", this);
 
-            return false;
+                    // Wait for the contended item and hold it while the others are retried
+                    // The wait is sliced, so that a waiter that was chosen to fail a deadlock notices its flag
+                    LockWaitGraph.Waiter waiter = waitGraph.startWaiting(this, contendedItem);
+                    try {
+                        while (!contended.tryLock(Math.min(remaining, DEADLOCK_CHECK_INTERVAL), TimeUnit.NANOSECONDS)) {
+                            String deadlock = waiter.getDeadlock();
+                            if (deadlock != null)
+                                throw MESSAGES.lockDeadlockDetected(this, deadlock);
+                            remaining = deadline - System.nanoTime();
+                            if (remaining <= 0)
+                                throw MESSAGES.cannotObtainLockTimely(new TimeoutException(), this);
+                        }
+                    } catch (InterruptedException ex) {
+                        throw MESSAGES.cannotObtainLockTimely(ex, this);
+                    } finally {
+                        waitGraph.stopWaiting(waiter);
+                    }
+                    parked = contended;
+
+                    LOGGER.tracef("LockManager continue ...");
+                }
+            } finally {
+                if (parked != null) {
+                    parked.unlock();
+                }
+            }
         }
 
         @Override
@@ -0,0 +1,356 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.osgi.framework.LockStatistics;
+import org.jboss.osgi.framework.internal.LockManagerImpl.LockContextImpl;
+import org.jboss.osgi.framework.spi.LockManager.LockableItem;
+import org.jboss.osgi.framework.spi.LockManager.Method;
+
+/**
+ * Records wait and hold times of the {@link LockManagerImpl} per lock method and item type.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class LockProfiler implements LockStatistics {
+
+    private final ConcurrentMap<String, LockEntry> entries = new ConcurrentHashMap<String, LockEntry>();
+    private final ConcurrentMap<LockContextImpl, Thread> holders = new ConcurrentHashMap<LockContextImpl, Thread>();
+    private ScheduledExecutorService dumpExecutor;
+
+    /**
+     * Record the successful acquisition of the given context by the current thread.
+     */
+    void locked(LockContextImpl context, long waitNanos) {
+        for (LockEntry entry : getEntries(context)) {
+            entry.lockCount.incrementAndGet();
+            entry.waitTimes.record(waitNanos);
+        }
+        context.lockedNanos = System.nanoTime();
+        holders.put(context, Thread.currentThread());
+    }
+
+    /**
+     * Record a failed acquisition of the given context.
+     */
+    void timedOut(LockContextImpl context, long waitNanos) {
+        for (LockEntry entry : getEntries(context)) {
+            entry.timeoutCount.incrementAndGet();
+            entry.waitTimes.record(waitNanos);
+        }
+        LOGGER.debugf("Lock timeout: %s%n%s", context, dump());
+    }
+
+    /**
+     * Record the release of the given context.
+     */
+    void unlocked(LockContextImpl context) {
+        // The context may have been locked before profiling was enabled
+        if (holders.remove(context) != null) {
+            long holdNanos = System.nanoTime() - context.lockedNanos;
+            for (LockEntry entry : getEntries(context)) {
+                entry.holdTimes.record(holdNanos);
+            }
+        }
+    }
+
+    private Set<LockEntry> getEntries(LockContextImpl context) {
+        Set<LockEntry> result = new LinkedHashSet<LockEntry>();
+        for (LockableItem item : context.getItems()) {
+            String itemType = item.getClass().getSimpleName();
+            String key = context.getMethod() + ":" + itemType;
+            LockEntry entry = entries.get(key);
+            if (entry == null) {
+                LockEntry newEntry = new LockEntry(context.getMethod(), itemType);
+                entry = entries.putIfAbsent(key, newEntry);
+                if (entry == null)
+                    entry = newEntry;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    synchronized void startPeriodicDump(long interval) {
+        if (dumpExecutor == null) {
+            dumpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable run) {
+                    Thread thread = new Thread(run, "Framework Lock Statistics Thread");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            Runnable runner = new Runnable() {
+                @Override
+                public void run() {
+                    LOGGER.infoLockStatistics(dump());
+                }
+            };
+            dumpExecutor.scheduleWithFixedDelay(runner, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stopPeriodicDump() {
+        if (dumpExecutor != null) {
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+    }
+
+    @Override
+    public List<Holder> getCurrentHolders() {
+        List<Holder> result = new ArrayList<Holder>();
+        long now = System.nanoTime();
+        for (Map.Entry<LockContextImpl, Thread> entry : holders.entrySet()) {
+            result.add(new LockHolder(entry.getKey(), entry.getValue(), now));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (Entry entry : getEntries()) {
+            builder.append(entry).append("\n");
+        }
+        for (Holder holder : getCurrentHolders()) {
+            builder.append(holder).append("\n");
+            for (StackTraceElement element : holder.getStackTrace()) {
+                builder.append("\tat ").append(element).append("\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void reset() {
+        // Entries are retained so that concurrent updates are not lost
+        for (LockEntry entry : entries.values()) {
+            entry.reset();
+        }
+    }
+
+    /**
+     * A thread safe histogram over {@link LockStatistics#TIME_BUCKET_BOUNDS}
+     */
+    static final class TimeHistogram {
+
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(TIME_BUCKET_BOUNDS.length + 1);
+
+        void record(long nanos) {
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = 0;
+            while (bucket < TIME_BUCKET_BOUNDS.length && micros >= TIME_BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        long[] getBuckets() {
+            long[] result = new long[buckets.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = buckets.get(i);
+            }
+            return result;
+        }
+
+        void reset() {
+            totalNanos.set(0);
+            maxNanos.set(0);
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    static final class LockEntry implements Entry {
+
+        private final Method method;
+        private final String itemType;
+        private final AtomicLong lockCount = new AtomicLong();
+        private final AtomicLong timeoutCount = new AtomicLong();
+        private final TimeHistogram waitTimes = new TimeHistogram();
+        private final TimeHistogram holdTimes = new TimeHistogram();
+
+        LockEntry(Method method, String itemType) {
+            this.method = method;
+            this.itemType = itemType;
+        }
+
+        void reset() {
+            lockCount.set(0);
+            timeoutCount.set(0);
+            waitTimes.reset();
+            holdTimes.reset();
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getItemType() {
+            return itemType;
+        }
+
+        @Override
+        public long getLockCount() {
+            return lockCount.get();
+        }
+
+        @Override
+        public long getTimeoutCount() {
+            return timeoutCount.get();
+        }
+
+        @Override
+        public long getTotalWaitNanos() {
+            return waitTimes.getTotalNanos();
+        }
+
+        @Override
+        public long getMaxWaitNanos() {
+            return waitTimes.getMaxNanos();
+        }
+
+        @Override
+        public long[] getWaitHistogram() {
+            return waitTimes.getBuckets();
+        }
+
+        @Override
+        public long getTotalHoldNanos() {
+            return holdTimes.getTotalNanos();
+        }
+
+        @Override
+        public long getMaxHoldNanos() {
+            return holdTimes.getMaxNanos();
+        }
+
+        @Override
+        public long[] getHoldHistogram() {
+            return holdTimes.getBuckets();
+        }
+
+        @Override
+        public String toString() {
+            return method + "[" + itemType + ",locks=" + lockCount.get() + ",timeouts=" + timeoutCount.get()
+                    + ",maxWait=" + TimeUnit.NANOSECONDS.toMillis(waitTimes.getMaxNanos()) + "ms"
+                    + ",maxHold=" + TimeUnit.NANOSECONDS.toMillis(holdTimes.getMaxNanos()) + "ms]";
+        }
+    }
+
+    static final class LockHolder implements Holder {
+
+        private final Method method;
+        private final List<String> items;
+        private final Thread thread;
+        private final long holdNanos;
+
+        LockHolder(LockContextImpl context, Thread thread, long now) {
+            this.method = context.getMethod();
+            this.thread = thread;
+            this.holdNanos = now - context.lockedNanos;
+            List<String> names = new ArrayList<String>();
+            for (LockableItem item : context.getItems()) {
+                names.add(String.valueOf(item));
+            }
+            this.items = Collections.unmodifiableList(names);
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public List<String> getItems() {
+            return items;
+        }
+
+        @Override
+        public String getThreadName() {
+            return thread.getName();
+        }
+
+        @Override
+        public long getThreadId() {
+            return thread.getId();
+        }
+
+        @Override
+        public long getHoldNanos() {
+            return holdNanos;
+        }
+
+        @Override
+        public StackTraceElement[] getStackTrace() {
+            return thread.getStackTrace();
+        }
+
+        @Override
+        public String toString() {
+            return "Held by " + thread.getName() + " for " + TimeUnit.NANOSECONDS.toMillis(holdNanos) + "ms: (" + method + ") " + items;
+        }
+    }
+}
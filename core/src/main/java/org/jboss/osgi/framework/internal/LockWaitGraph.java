@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.osgi.framework.internal.LockManagerImpl.LockContextImpl;
+import org.jboss.osgi.framework.spi.LockManager.LockContext;
+import org.jboss.osgi.framework.spi.LockManager.LockableItem;
+
+/**
+ * A wait-for graph between the threads that hold lock contexts and the threads that wait for their items.
+ *
+ * A thread only blocks while it holds the items of previously obtained contexts, so an edge in this
+ * graph is the contended item of a waiting thread and the thread that holds it through one of its contexts.
+ * A cycle is detected by the thread that closes it, the youngest lock request in the cycle is failed.
+ * A failed waiter is flagged rather than interrupted and notices the failure the next time it checks its flag.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class LockWaitGraph {
+
+    private final ConcurrentMap<Thread, Stack<LockContext>> holders = new ConcurrentHashMap<Thread, Stack<LockContext>>();
+    private final ConcurrentMap<Thread, Waiter> waiters = new ConcurrentHashMap<Thread, Waiter>();
+
+    /**
+     * Associate the context stack of the current thread
+     */
+    void addHolder(Stack<LockContext> contextStack) {
+        holders.put(Thread.currentThread(), contextStack);
+    }
+
+    void removeHolder() {
+        holders.remove(Thread.currentThread());
+    }
+
+    /**
+     * Register the current thread as waiting for the given item.
+     *
+     * @throws org.jboss.osgi.framework.spi.LockException if this wait closes a cycle and the given context is the youngest request in it
+     */
+    Waiter startWaiting(LockContextImpl context, LockableItem item) {
+        Waiter waiter = new Waiter(Thread.currentThread(), context, item);
+        waiters.put(waiter.thread, waiter);
+        List<Waiter> cycle = findCycle(waiter);
+        if (cycle != null) {
+            Waiter victim = waiter;
+            for (Waiter aux : cycle) {
+                if (aux.context.sequence > victim.context.sequence) {
+                    victim = aux;
+                }
+            }
+            String report = getReport(cycle);
+            if (victim == waiter) {
+                stopWaiting(waiter);
+                throw MESSAGES.lockDeadlockDetected(context, report);
+            }
+            victim.fail(report);
+        }
+        return waiter;
+    }
+
+    /**
+     * Unregister the current thread after its wait has ended
+     */
+    void stopWaiting(Waiter waiter) {
+        waiter.stop();
+        waiters.remove(waiter.thread, waiter);
+    }
+
+    private List<Waiter> findCycle(Waiter start) {
+        List<Waiter> path = new ArrayList<Waiter>();
+        Set<Thread> visited = new HashSet<Thread>();
+        Waiter current = start;
+        while (current != null && visited.add(current.thread)) {
+            path.add(current);
+            Thread owner = getOwner(current.item.getReentrantLock(), current.thread);
+            if (owner == null)
+                return null;
+            if (owner == start.thread)
+                return path;
+            current = waiters.get(owner);
+        }
+        return null;
+    }
+
+    private Thread getOwner(ReentrantLock lock, Thread waiting) {
+        for (Map.Entry<Thread, Stack<LockContext>> entry : holders.entrySet()) {
+            if (entry.getKey() == waiting)
+                continue;
+            for (Object obj : entry.getValue().toArray()) {
+                for (LockableItem item : ((LockContext) obj).getItems()) {
+                    if (item.getReentrantLock() == lock) {
+                        return entry.getKey();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getReport(List<Waiter> cycle) {
+        StringBuilder builder = new StringBuilder();
+        for (Waiter waiter : cycle) {
+            if (builder.length() > 0)
+                builder.append(", ");
+            builder.append(waiter);
+        }
+        return builder.toString();
+    }
+
+    static final class Waiter {
+
+        private final Thread thread;
+        private final LockContextImpl context;
+        private final LockableItem item;
+        // guarded by this
+        private String deadlock;
+        private boolean stopped;
+
+        Waiter(Thread thread, LockContextImpl context, LockableItem item) {
+            this.thread = thread;
+            this.context = context;
+            this.item = item;
+        }
+
+        /**
+         * The deadlock report if this waiter was chosen to fail
+         */
+        synchronized String getDeadlock() {
+            return deadlock;
+        }
+
+        // A waiter that has already stopped waiting is no longer part of the cycle
+        private synchronized void fail(String report) {
+            if (stopped == false) {
+                deadlock = report;
+            }
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + thread.getName() + "] " + context + " waits for " + item;
+        }
+    }
+}
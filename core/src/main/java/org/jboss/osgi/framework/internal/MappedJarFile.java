@@ -0,0 +1,423 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only view of a JAR file that is memory mapped once.
+ *
+ * The central directory is parsed when the file is opened. Entry content is served from the mapping,
+ * stored entries are copied once and deflated entries are inflated into an array of the exact entry size.
+ * Directories that have no explicit entry in the archive are derived from the entry names.
+ *
+ * Archives that use the Zip64 format or that are signed are not supported, {@link #open(File)} returns null for them.
+ *
+ * The mapping is released on {@link #close()}, which allows the file to be deleted on platforms that lock mapped files.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class MappedJarFile {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+    private ByteBuffer mapping;
+    private final Map<String, MappedEntry> entries;
+    private final Map<String, List<String>> children;
+    private volatile Manifest manifest;
+
+    private MappedJarFile(File file, ByteBuffer mapping, Map<String, MappedEntry> entries) {
+        this.file = file;
+        this.mapping = mapping;
+        this.entries = entries;
+        this.children = getChildren(entries);
+    }
+
+    /**
+     * Map the given JAR file.
+     *
+     * @return The mapped file or null if the archive format is not supported
+     */
+    static MappedJarFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < END_HEADER_SIZE || size > Integer.MAX_VALUE)
+                return null;
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            Map<String, MappedEntry> entries = null;
+            try {
+                entries = readCentralDirectory(mapping);
+                if (entries != null && isSigned(entries))
+                    entries = null;
+            } finally {
+                if (entries == null) {
+                    unmap(file, mapping);
+                }
+            }
+            return entries != null ? new MappedJarFile(file, mapping, entries) : null;
+        } finally {
+            raf.close();
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * True if there is a file or directory entry for the given path
+     */
+    boolean contains(String path) {
+        return entries.containsKey(normalize(path));
+    }
+
+    boolean isDirectory(String path) {
+        MappedEntry entry = entries.get(normalize(path));
+        return entry != null && entry.directory;
+    }
+
+    /**
+     * Get the normalized names of all file entries.
+     */
+    List<String> getFileNames() {
+        List<String> result = new ArrayList<String>();
+        for (MappedEntry entry : entries.values()) {
+            if (!entry.directory) {
+                result.add(entry.name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the normalized names of the direct children of the given directory, sorted by name.
+     */
+    List<String> getChildren(String path) {
+        List<String> result = children.get(normalize(path));
+        return result != null ? result : Collections.<String>emptyList();
+    }
+
+    /**
+     * Get the uncompressed size of a file entry or -1 if there is no such entry
+     */
+    long getSize(String path) {
+        MappedEntry entry = entries.get(normalize(path));
+        return entry != null && !entry.directory ? entry.size : -1;
+    }
+
+    /**
+     * Get the content of a file entry or null if there is no such entry
+     */
+    byte[] getBytes(String path) throws IOException {
+        MappedEntry entry = entries.get(normalize(path));
+        if (entry == null || entry.directory)
+            return null;
+
+        // The raw entry bytes are copied out of the mapping, the nowrap inflater needs an extra dummy byte at the end of the input
+        int rawSize = entry.method == METHOD_STORED ? entry.size : entry.compressedSize;
+        byte[] raw = new byte[entry.method == METHOD_STORED ? rawSize : rawSize + 1];
+
+        // The mapping must not be released while it is read
+        mappingLock.readLock().lock();
+        try {
+            if (mapping == null)
+                throw new IOException("Closed: " + file);
+
+            // A duplicate keeps concurrent readers from sharing the buffer position
+            ByteBuffer buffer = mapping.duplicate();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(entry.headerOffset) != LOCAL_HEADER_SIGNATURE)
+                throw new IOException("Invalid local header for '" + entry.name + "' in: " + file);
+            int nameLength = buffer.getShort(entry.headerOffset + 26) & 0xFFFF;
+            int extraLength = buffer.getShort(entry.headerOffset + 28) & 0xFFFF;
+            int dataOffset = entry.headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+            if ((long) dataOffset + rawSize > buffer.limit())
+                throw new IOException("Invalid local header for '" + entry.name + "' in: " + file);
+            buffer.position(dataOffset);
+            buffer.get(raw, 0, rawSize);
+        } finally {
+            mappingLock.readLock().unlock();
+        }
+
+        if (entry.method == METHOD_STORED)
+            return raw;
+
+        byte[] bytes = new byte[entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            int count = 0;
+            while (count < bytes.length) {
+                int read = inflater.inflate(bytes, count, bytes.length - count);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                count += read;
+            }
+            if (count != bytes.length)
+                throw new IOException("Truncated entry '" + entry.name + "' in: " + file);
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid entry '" + entry.name + "' in: " + file, ex);
+        } finally {
+            inflater.end();
+        }
+        return bytes;
+    }
+
+    InputStream openStream(String path) throws IOException {
+        byte[] bytes = getBytes(path);
+        if (bytes == null) {
+            if (isDirectory(path))
+                return new ByteArrayInputStream(new byte[0]);
+            throw new IOException("No entry '" + path + "' in: " + file);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Get the manifest or null if there is none
+     */
+    Manifest getManifest() throws IOException {
+        Manifest result = manifest;
+        if (result == null) {
+            byte[] bytes = getBytes("META-INF/MANIFEST.MF");
+            if (bytes == null)
+                return null;
+            manifest = result = new Manifest(new ByteArrayInputStream(bytes));
+        }
+        return result;
+    }
+
+    /**
+     * Release the mapping. Entry content is no longer available, the entry names still are.
+     */
+    void close() {
+        ByteBuffer released;
+        mappingLock.writeLock().lock();
+        try {
+            released = mapping;
+            mapping = null;
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+        if (released != null) {
+            unmap(file, released);
+        }
+    }
+
+    /**
+     * Unmap the buffer through its cleaner instead of waiting for it to be garbage collected.
+     * This is best effort, a JVM without an accessible cleaner keeps the mapping until then.
+     */
+    private static void unmap(File file, ByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception ex) {
+            LOGGER.debugf(ex, "Cannot unmap: %s", file);
+        }
+    }
+
+    /**
+     * Strip leading and trailing slashes. The root directory is the empty path.
+     */
+    static String normalize(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/')
+            start++;
+        while (end > start && path.charAt(end - 1) == '/')
+            end--;
+        return path.substring(start, end);
+    }
+
+    private static Map<String, MappedEntry> readCentralDirectory(ByteBuffer mapping) {
+        int endOffset = -1;
+        int minOffset = Math.max(0, mapping.limit() - END_HEADER_SIZE - 0xFFFF);
+        for (int offset = mapping.limit() - END_HEADER_SIZE; offset >= minOffset; offset--) {
+            if (mapping.getInt(offset) == END_HEADER_SIGNATURE) {
+                endOffset = offset;
+                break;
+            }
+        }
+        if (endOffset < 0)
+            return null;
+
+        int entryCount = mapping.getShort(endOffset + 10) & 0xFFFF;
+        long directoryOffset = mapping.getInt(endOffset + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || directoryOffset == 0xFFFFFFFFL || directoryOffset >= endOffset)
+            return null;
+
+        Map<String, MappedEntry> entries = new HashMap<String, MappedEntry>();
+        entries.put("", new MappedEntry("", true, -1, 0, 0, 0));
+        int offset = (int) directoryOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if (offset + CENTRAL_HEADER_SIZE > endOffset || mapping.getInt(offset) != CENTRAL_HEADER_SIGNATURE)
+                return null;
+
+            int method = mapping.getShort(offset + 10) & 0xFFFF;
+            long compressedSize = mapping.getInt(offset + 20) & 0xFFFFFFFFL;
+            long size = mapping.getInt(offset + 24) & 0xFFFFFFFFL;
+            int nameLength = mapping.getShort(offset + 28) & 0xFFFF;
+            int extraLength = mapping.getShort(offset + 30) & 0xFFFF;
+            int commentLength = mapping.getShort(offset + 32) & 0xFFFF;
+            long headerOffset = mapping.getInt(offset + 42) & 0xFFFFFFFFL;
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || headerOffset == 0xFFFFFFFFL)
+                return null;
+
+            // Entries that do not fit into the archive are left to the VFS
+            long rawSize = method == METHOD_STORED ? size : compressedSize;
+            if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE || headerOffset + LOCAL_HEADER_SIZE + rawSize > directoryOffset)
+                return null;
+            if (offset + CENTRAL_HEADER_SIZE + nameLength > endOffset)
+                return null;
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer buffer = mapping.duplicate();
+            buffer.position(offset + CENTRAL_HEADER_SIZE);
+            buffer.get(nameBytes);
+            String rawName = new String(nameBytes, UTF8);
+            boolean directory = rawName.endsWith("/");
+            String name = normalize(rawName);
+            if (!directory && method != METHOD_STORED && method != METHOD_DEFLATED)
+                return null;
+
+            if (name.length() > 0) {
+                entries.put(name, new MappedEntry(name, directory, method, (int) compressedSize, (int) size, (int) headerOffset));
+                addParentDirectories(entries, name);
+            }
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static void addParentDirectories(Map<String, MappedEntry> entries, String name) {
+        int index = name.lastIndexOf('/');
+        while (index > 0) {
+            String parent = name.substring(0, index);
+            if (entries.containsKey(parent))
+                break;
+            entries.put(parent, new MappedEntry(parent, true, -1, 0, 0, 0));
+            index = parent.lastIndexOf('/');
+        }
+    }
+
+    private static boolean isSigned(Map<String, MappedEntry> entries) {
+        for (String name : entries.keySet()) {
+            if (name.startsWith("META-INF/") && name.indexOf('/', 9) < 0) {
+                String upper = name.toUpperCase();
+                if (upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC"))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, List<String>> getChildren(Map<String, MappedEntry> entries) {
+        Map<String, TreeSet<String>> sorted = new HashMap<String, TreeSet<String>>();
+        for (String name : entries.keySet()) {
+            if (name.length() > 0) {
+                int index = name.lastIndexOf('/');
+                String parent = index > 0 ? name.substring(0, index) : "";
+                TreeSet<String> names = sorted.get(parent);
+                if (names == null) {
+                    names = new TreeSet<String>();
+                    sorted.put(parent, names);
+                }
+                names.add(name);
+            }
+        }
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for (Map.Entry<String, TreeSet<String>> entry : sorted.entrySet()) {
+            result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedJarFile[" + file + "]";
+    }
+
+    private static final class MappedEntry {
+
+        private final String name;
+        private final boolean directory;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int headerOffset;
+
+        MappedEntry(String name, boolean directory, int method, int compressedSize, int size, int headerOffset) {
+            this.name = name;
+            this.directory = directory;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.headerOffset = headerOffset;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+import org.jboss.modules.ClassSpec;
+import org.jboss.modules.IterableResourceLoader;
+import org.jboss.modules.PackageSpec;
+import org.jboss.modules.Resource;
+import org.jboss.modules.ResourceLoader;
+import org.jboss.osgi.framework.spi.VirtualFileResourceLoader;
+
+/**
+ * An {@link ResourceLoader} that is backed by a {@link MappedJarFile}.
+ *
+ * Class bytes are read from the mapping directly, resource URLs are the bundle entry URLs of the {@link RevisionContent}.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class MappedJarResourceLoader implements IterableResourceLoader {
+
+    private final RevisionContent revContent;
+    private final MappedJarFile mappedJar;
+    private final Set<String> localPaths;
+
+    MappedJarResourceLoader(RevisionContent revContent, MappedJarFile mappedJar) {
+        assert revContent != null : "Null revContent";
+        assert mappedJar != null : "Null mappedJar";
+        this.revContent = revContent;
+        this.mappedJar = mappedJar;
+        this.localPaths = getLocalPaths();
+    }
+
+    @Override
+    public String getRootName() {
+        return revContent.getVirtualFile().getPathName();
+    }
+
+    @Override
+    public ClassSpec getClassSpec(String fileName) throws IOException {
+        byte[] bytes = mappedJar.getBytes(fileName);
+        if (bytes == null)
+            return null;
+
+        ClassSpec classSpec = new ClassSpec();
+        classSpec.setBytes(bytes);
+        String simpleName = fileName.substring(fileName.lastIndexOf('/') + 1);
+        classSpec.setCodeSource(new CodeSource(new URL("jar", null, -1, simpleName), (CodeSigner[]) null));
+        return classSpec;
+    }
+
+    @Override
+    public PackageSpec getPackageSpec(String name) throws IOException {
+        Manifest manifest = mappedJar.getManifest();
+        return VirtualFileResourceLoader.createPackageSpec(manifest, name, revContent.getVirtualFile().toURL());
+    }
+
+    @Override
+    public Resource getResource(String name) {
+        String path = MappedJarFile.normalize(name);
+        return mappedJar.contains(path) ? new MappedJarResource(path) : null;
+    }
+
+    @Override
+    public String getLibrary(String name) {
+        return null;
+    }
+
+    @Override
+    public Collection<String> getPaths() {
+        return localPaths;
+    }
+
+    @Override
+    public Iterator<Resource> iterateResources(String startPath, boolean recurse) {
+        List<Resource> result = new ArrayList<Resource>();
+        String path = MappedJarFile.normalize(startPath);
+        if (mappedJar.isDirectory(path)) {
+            addResources(result, path, recurse);
+        }
+        return result.iterator();
+    }
+
+    private void addResources(List<Resource> result, String path, boolean recurse) {
+        for (String child : mappedJar.getChildren(path)) {
+            if (mappedJar.isDirectory(child)) {
+                if (recurse) {
+                    addResources(result, child, recurse);
+                }
+            } else {
+                result.add(new MappedJarResource(child));
+            }
+        }
+    }
+
+    private Set<String> getLocalPaths() {
+        Set<String> result = new HashSet<String>();
+        for (String entryPath : mappedJar.getFileNames()) {
+            int inx = entryPath.lastIndexOf("/");
+            result.add(inx > 0 ? entryPath.substring(0, inx) : "");
+        }
+        if (result.size() == 0)
+            throw MESSAGES.illegalArgumentCannotObtainPaths(null, revContent.getVirtualFile());
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public String toString() {
+        return mappedJar.toString();
+    }
+
+    class MappedJarResource implements Resource {
+
+        private final String path;
+
+        MappedJarResource(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getName() {
+            return path;
+        }
+
+        @Override
+        public URL getURL() {
+            return revContent.getEntry(path);
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return mappedJar.openStream(path);
+        }
+
+        @Override
+        public long getSize() {
+            long size = mappedJar.getSize(path);
+            return size > 0 ? size : 0;
+        }
+    }
+}
@@ -56,7 +56,6 @@ import org.jboss.osgi.vfs.VFSUtils;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Filter;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.Version;
 import org.osgi.framework.VersionRange;
@@ -287,7 +286,7 @@ public final class NativeCodeImpl implements NativeCode {
             String filterSpec = (String) filterSelectionParam.getValue();
             if (filterSpec != null) {
                 try {
-                    Filter filter = FrameworkUtil.createFilter(filterSpec);
+                    Filter filter = FilterCache.getInstance().createFilter(filterSpec);
                     if (filter.match(frameworkProps)) {
                         filterMatch = true;
                     }
@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XCapability;
+import org.jboss.osgi.resolver.XPackageCapability;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+
+/**
+ * Indexes the package capabilities of the bundle revisions installed in the {@link IndexedEnvironment}
+ * by package name.
+ *
+ * The exporters of a package are ordered by descending version, then ascending bundle id.
+ * Mutations are serialized on the index, queries read immutable snapshots without locking.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class PackageIndex {
+
+    static final Comparator<XPackageCapability> EXPORT_ORDER = new Comparator<XPackageCapability>() {
+        @Override
+        public int compare(XPackageCapability cap1, XPackageCapability cap2) {
+            Version v1 = cap1.getVersion() != null ? cap1.getVersion() : Version.emptyVersion;
+            Version v2 = cap2.getVersion() != null ? cap2.getVersion() : Version.emptyVersion;
+            int result = v2.compareTo(v1);
+            if (result == 0) {
+                long id1 = getBundleId(cap1);
+                long id2 = getBundleId(cap2);
+                result = id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+            return result;
+        }
+    };
+
+    private final Map<String, List<XPackageCapability>> exports = new ConcurrentHashMap<String, List<XPackageCapability>>();
+
+    synchronized void addRevision(XBundleRevision brev) {
+        for (XPackageCapability cap : getPackageCapabilities(brev)) {
+            String packageName = cap.getPackageName();
+            List<XPackageCapability> caps = exports.get(packageName);
+            List<XPackageCapability> sorted = new ArrayList<XPackageCapability>(caps != null ? caps : Collections.<XPackageCapability>emptyList());
+            if (!sorted.contains(cap)) {
+                sorted.add(cap);
+                Collections.sort(sorted, EXPORT_ORDER);
+                exports.put(packageName, Collections.unmodifiableList(sorted));
+            }
+        }
+    }
+
+    synchronized void removeRevision(XBundleRevision brev) {
+        for (XPackageCapability cap : getPackageCapabilities(brev)) {
+            String packageName = cap.getPackageName();
+            List<XPackageCapability> caps = exports.get(packageName);
+            if (caps != null && caps.contains(cap)) {
+                List<XPackageCapability> sorted = new ArrayList<XPackageCapability>(caps);
+                sorted.remove(cap);
+                if (sorted.isEmpty()) {
+                    exports.remove(packageName);
+                } else {
+                    exports.put(packageName, Collections.unmodifiableList(sorted));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the capabilities that export the given package, regardless of the state of the exporting bundle.
+     */
+    List<XPackageCapability> getExporters(String packageName) {
+        List<XPackageCapability> caps = exports.get(packageName);
+        return caps != null ? caps : Collections.<XPackageCapability>emptyList();
+    }
+
+    private static List<XPackageCapability> getPackageCapabilities(XBundleRevision brev) {
+        List<XPackageCapability> result = new ArrayList<XPackageCapability>();
+        for (Capability aux : brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+            result.add(((XCapability) aux).adapt(XPackageCapability.class));
+        }
+        return result;
+    }
+
+    private static long getBundleId(XPackageCapability cap) {
+        XBundleRevision brev = (XBundleRevision) cap.getResource();
+        return brev.getBundle() != null ? brev.getBundle().getBundleId() : -1;
+    }
+}
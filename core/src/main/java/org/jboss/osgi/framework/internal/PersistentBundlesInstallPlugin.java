@@ -31,16 +31,21 @@ import java.util.List;
 import java.util.Set;
 
 import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceController;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.spi.BootstrapBundlesInstall;
 import org.jboss.osgi.framework.spi.DeploymentProvider;
 import org.jboss.osgi.framework.spi.IntegrationServices;
 import org.jboss.osgi.framework.spi.StorageManager;
 import org.jboss.osgi.framework.spi.StorageState;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.osgi.resolver.XResolver;
 import org.osgi.framework.BundleException;
 
 /**
@@ -53,6 +58,8 @@ final class PersistentBundlesInstallPlugin extends BootstrapBundlesInstall<Void>
 
     private final InjectedValue<StorageManager> injectedStoragePlugin = new InjectedValue<StorageManager>();
     private final InjectedValue<DeploymentProvider> injectedDeploymentFactory = new InjectedValue<DeploymentProvider>();
+    private final InjectedValue<XResolver> injectedResolver = new InjectedValue<XResolver>();
+    private final InjectedValue<XEnvironment> injectedEnvironment = new InjectedValue<XEnvironment>();
 
     PersistentBundlesInstallPlugin() {
         super(IntegrationServices.PERSISTENT_BUNDLES);
@@ -63,6 +70,8 @@ final class PersistentBundlesInstallPlugin extends BootstrapBundlesInstall<Void>
         super.addServiceDependencies(builder);
         builder.addDependency(IntegrationServices.STORAGE_MANAGER_PLUGIN, StorageManager.class, injectedStoragePlugin);
         builder.addDependency(IntegrationServices.DEPLOYMENT_PROVIDER_PLUGIN, DeploymentProvider.class, injectedDeploymentFactory);
+        builder.addDependency(Services.RESOLVER, XResolver.class, injectedResolver);
+        builder.addDependency(Services.ENVIRONMENT, XEnvironment.class, injectedEnvironment);
         builder.addDependencies(IntegrationServices.BOOTSTRAP_BUNDLES_COMPLETE);
     }
 
@@ -97,4 +106,14 @@ final class PersistentBundlesInstallPlugin extends BootstrapBundlesInstall<Void>
         // Install the bundles from the given locations
         installBootstrapBundles(serviceTarget, deployments);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected ServiceController<Void> installResolveService(ServiceTarget serviceTarget, Set<XBundleRevision> installedRevisions) {
+        // The stored wiring of a previous run can only be verified against the complete set of bundles
+        XResolver resolver = injectedResolver.getValue();
+        if (resolver instanceof FrameworkResolverImpl) {
+            ((FrameworkResolverImpl) resolver).verifyResolutionCache(injectedEnvironment.getValue());
+        }
+        return super.installResolveService(serviceTarget, installedRevisions);
+    }
+}
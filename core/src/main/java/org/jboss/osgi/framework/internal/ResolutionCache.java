@@ -0,0 +1,388 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.osgi.resolver.XResource;
+import org.osgi.framework.Constants;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+
+/**
+ * A persistent copy of the wiring of the bundle revisions in the environment.
+ *
+ * The wiring is stored on framework shutdown together with a fingerprint of the bundle revisions and the system properties.
+ * When a later startup resolves the same set of bundles, the stored wires are applied instead of running the resolver.
+ *
+ * Resources are identified by bundle location, requirements and capabilities by their index in the declaring resource.
+ *
+ * The fingerprint is verified once per startup, after the persistent bundles are installed. Until then the stored wiring
+ * does not apply. Later lookups only check that the set of bundle revisions is still the one that was verified.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ResolutionCache {
+
+    static final String CACHE_FILE = "resolution-cache.dat";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File cacheFile;
+    private final String[] systemProperties;
+    private volatile String fingerprint;
+    private volatile Map<String, List<WireSpec>> wiring;
+    private volatile Set<Resource> verified;
+
+    ResolutionCache(File storageArea, String... systemProperties) {
+        this.cacheFile = new File(storageArea, CACHE_FILE);
+        this.systemProperties = systemProperties;
+    }
+
+    /**
+     * Load the stored wiring. A missing or unreadable cache is ignored.
+     */
+    void load() {
+        if (!cacheFile.isFile())
+            return;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (input.readInt() != FORMAT_VERSION)
+                    return;
+                String storedFingerprint = input.readUTF();
+                Map<String, List<WireSpec>> storedWiring = new HashMap<String, List<WireSpec>>();
+                int resources = input.readInt();
+                for (int i = 0; i < resources; i++) {
+                    String location = input.readUTF();
+                    int wires = input.readInt();
+                    List<WireSpec> specs = new ArrayList<WireSpec>(wires);
+                    for (int j = 0; j < wires; j++) {
+                        specs.add(new WireSpec(input.readInt(), input.readUTF(), input.readInt()));
+                    }
+                    storedWiring.put(location, specs);
+                }
+                fingerprint = storedFingerprint;
+                wiring = storedWiring;
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot read resolution cache: %s", cacheFile);
+        }
+    }
+
+    /**
+     * Store the current wiring of the environment
+     */
+    void store(XEnvironment env, Map<Resource, Wiring> wirings) {
+        Map<String, List<WireSpec>> storedWiring = getStoredWiring(wirings);
+        if (storedWiring == null) {
+            // A previous cache must not be applied to this wiring
+            cacheFile.delete();
+            return;
+        }
+        try {
+            cacheFile.getParentFile().mkdirs();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+            try {
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(getFingerprint(env));
+                output.writeInt(storedWiring.size());
+                for (Entry<String, List<WireSpec>> entry : storedWiring.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (WireSpec spec : entry.getValue()) {
+                        output.writeInt(spec.requirementIndex);
+                        output.writeUTF(spec.provider);
+                        output.writeInt(spec.capabilityIndex);
+                    }
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot write resolution cache: %s", cacheFile);
+            cacheFile.delete();
+        }
+    }
+
+    /**
+     * Get the storable form of the given wirings or null if they cannot be restored by index
+     */
+    private Map<String, List<WireSpec>> getStoredWiring(Map<Resource, Wiring> wirings) {
+        Map<String, List<WireSpec>> storedWiring = new LinkedHashMap<String, List<WireSpec>>();
+        for (Entry<Resource, Wiring> entry : wirings.entrySet()) {
+            Resource res = entry.getKey();
+            String location = getLocation(res);
+            if (location == null)
+                return null;
+            List<WireSpec> specs = new ArrayList<WireSpec>();
+            for (Wire wire : entry.getValue().getRequiredResourceWires(null)) {
+                if (wire.getRequirer() != res)
+                    return null;
+                String provider = getLocation(wire.getProvider());
+                int reqIndex = indexOf(res.getRequirements(null), wire.getRequirement());
+                int capIndex = indexOf(wire.getProvider().getCapabilities(null), wire.getCapability());
+                if (provider == null || reqIndex < 0 || capIndex < 0)
+                    return null;
+                specs.add(new WireSpec(reqIndex, provider, capIndex));
+            }
+            storedWiring.put(location, specs);
+        }
+        return storedWiring;
+    }
+
+    /**
+     * Get the stored wires of the given resources and of the unresolved providers they need.
+     *
+     * @return the wire map or null if the stored wiring does not apply to the environment
+     */
+    Map<Resource, List<Wire>> getWiremap(XEnvironment env, Map<Resource, Wiring> wirings, Collection<? extends Resource> manres, Collection<? extends Resource> optres) {
+        // Before verification and for any other set of bundle revisions the stored wiring is not applicable
+        Map<String, List<WireSpec>> storedWiring = wiring;
+        Set<Resource> verifiedResources = verified;
+        if (storedWiring == null || verifiedResources == null)
+            return null;
+
+        Map<String, Resource> resources = getResources(env);
+        if (!verifiedResources.equals(new HashSet<Resource>(resources.values())))
+            return null;
+
+        // Optional resources that did not resolve before will not resolve now
+        LinkedList<Resource> queue = new LinkedList<Resource>(manres);
+        for (Resource res : optres) {
+            String location = getLocation(res);
+            if (location != null && storedWiring.containsKey(location)) {
+                queue.add(res);
+            }
+        }
+
+        Map<Resource, List<Wire>> result = new LinkedHashMap<Resource, List<Wire>>();
+        while (!queue.isEmpty()) {
+            Resource res = queue.removeFirst();
+            if (result.containsKey(res) || wirings.containsKey(res))
+                continue;
+            String location = getLocation(res);
+            List<WireSpec> specs = location != null ? storedWiring.get(location) : null;
+            if (specs == null)
+                return null;
+            List<Wire> wires = new ArrayList<Wire>();
+            List<Requirement> reqs = res.getRequirements(null);
+            for (WireSpec spec : specs) {
+                Resource provider = resources.get(spec.provider);
+                if (provider == null || spec.requirementIndex >= reqs.size())
+                    return null;
+                List<Capability> caps = provider.getCapabilities(null);
+                if (spec.capabilityIndex >= caps.size())
+                    return null;
+                wires.add(new CachedWire(caps.get(spec.capabilityIndex), reqs.get(spec.requirementIndex)));
+                if (!wirings.containsKey(provider)) {
+                    queue.add(provider);
+                }
+            }
+            result.put(res, wires);
+        }
+        return result;
+    }
+
+    /**
+     * Compare the stored fingerprint with the environment once all persistent bundles are installed.
+     * A mismatch discards the stored wiring, a match makes it applicable to this set of bundle revisions.
+     */
+    void verify(XEnvironment env) {
+        if (wiring == null)
+            return;
+
+        Map<String, Resource> resources = getResources(env);
+        if (fingerprint.equals(getFingerprint(resources))) {
+            verified = new HashSet<Resource>(resources.values());
+        } else {
+            LOGGER.debugf("Discard resolution cache, the environment changed: %s", cacheFile);
+            wiring = null;
+        }
+    }
+
+    /**
+     * A digest over the location and headers of every bundle revision and the system properties
+     */
+    String getFingerprint(XEnvironment env) {
+        return getFingerprint(getResources(env));
+    }
+
+    private String getFingerprint(Map<String, Resource> resources) {
+        Map<String, Resource> sorted = new TreeMap<String, Resource>(resources);
+        MessageDigest digest = DigestHelper.newDigest();
+        for (String value : systemProperties) {
+            DigestHelper.update(digest, value);
+        }
+        for (Entry<String, Resource> entry : sorted.entrySet()) {
+            DigestHelper.update(digest, entry.getKey());
+            XBundle bundle = ((XBundleRevision) entry.getValue()).getBundle();
+            Dictionary<String, String> headers = bundle.getHeaders("");
+            Map<String, String> sortedHeaders = new TreeMap<String, String>();
+            Enumeration<String> keys = headers.keys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                sortedHeaders.put(key, headers.get(key));
+            }
+            for (Entry<String, String> header : sortedHeaders.entrySet()) {
+                DigestHelper.update(digest, header.getKey());
+                DigestHelper.update(digest, header.getValue());
+            }
+        }
+        return DigestHelper.toHex(digest.digest());
+    }
+
+    /**
+     * The current bundle revisions in the environment by location
+     */
+    private static Map<String, Resource> getResources(XEnvironment env) {
+        Map<String, Resource> resources = new HashMap<String, Resource>();
+        Iterator<XResource> itres = env.getResources(null);
+        while (itres.hasNext()) {
+            XResource res = itres.next();
+            String location = getLocation(res);
+            if (location != null) {
+                resources.put(location, res);
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * The location of the current revision of a bundle or null for any other resource
+     */
+    private static String getLocation(Resource res) {
+        if (res instanceof XBundleRevision) {
+            XBundle bundle = ((XBundleRevision) res).getBundle();
+            if (bundle != null && bundle.getBundleRevision() == res) {
+                return bundle.getLocation();
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(List<?> list, Object obj) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == obj) {
+                return i;
+            }
+        }
+        return list.indexOf(obj);
+    }
+
+    /**
+     * The properties that define the capabilities of the system bundle. Without an explicit execution environment
+     * the provided environments depend on the Java version.
+     */
+    static String[] getSystemProperties(Map<String, Object> props) {
+        String[] keys = new String[] { Constants.FRAMEWORK_SYSTEMPACKAGES, Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA, Constants.FRAMEWORK_BOOTDELEGATION,
+                Constants.FRAMEWORK_SYSTEMCAPABILITIES, Constants.FRAMEWORK_SYSTEMCAPABILITIES_EXTRA, Constants.FRAMEWORK_EXECUTIONENVIRONMENT };
+        String[] values = new String[keys.length + 1];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = String.valueOf(props.get(keys[i]));
+        }
+        values[keys.length] = System.getProperty("java.specification.version");
+        return values;
+    }
+
+    private static final class WireSpec {
+
+        private final int requirementIndex;
+        private final String provider;
+        private final int capabilityIndex;
+
+        WireSpec(int requirementIndex, String provider, int capabilityIndex) {
+            this.requirementIndex = requirementIndex;
+            this.provider = provider;
+            this.capabilityIndex = capabilityIndex;
+        }
+    }
+
+    static final class CachedWire implements Wire {
+
+        private final Capability capability;
+        private final Requirement requirement;
+
+        CachedWire(Capability capability, Requirement requirement) {
+            this.capability = capability;
+            this.requirement = requirement;
+        }
+
+        @Override
+        public Capability getCapability() {
+            return capability;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return requirement;
+        }
+
+        @Override
+        public Resource getProvider() {
+            return capability.getResource();
+        }
+
+        @Override
+        public Resource getRequirer() {
+            return requirement.getResource();
+        }
+
+        @Override
+        public String toString() {
+            return "CachedWire[" + requirement + " -> " + capability + "]";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.osgi.resolver.XIdentityCapability;
+import org.jboss.osgi.resolver.XResource;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * A set of resources of a resolve request that can be resolved independently of the other resources of that request.
+ *
+ * Two resources belong to the same component if they are connected through requirements and capabilities of
+ * unresolved resources, or if they are singletons with the same symbolic name. Resolved resources do not
+ * connect components, because their wiring does not change.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ResolveComponent {
+
+    private final Set<Resource> mandatory = new HashSet<Resource>();
+    private final Set<Resource> optional = new HashSet<Resource>();
+
+    Set<Resource> getMandatory() {
+        return mandatory;
+    }
+
+    Set<Resource> getOptional() {
+        return optional;
+    }
+
+    /**
+     * Partition the mandatory and optional resources into independent components
+     */
+    static List<ResolveComponent> partition(ResolveContext context, Collection<Resource> manres, Collection<Resource> optres) {
+        Map<Resource, Wiring> wirings = context.getWirings();
+        Map<Resource, Resource> parents = new HashMap<Resource, Resource>();
+        Map<String, Resource> singletons = new HashMap<String, Resource>();
+
+        // Walk the unresolved providers that are reachable from the requested resources
+        LinkedList<Resource> queue = new LinkedList<Resource>();
+        Set<Resource> visited = new HashSet<Resource>();
+        queue.addAll(manres);
+        queue.addAll(optres);
+        while (!queue.isEmpty()) {
+            Resource res = queue.removeFirst();
+            if (!visited.add(res))
+                continue;
+
+            if (res instanceof XResource) {
+                XIdentityCapability icap = ((XResource) res).getIdentityCapability();
+                if (icap != null && icap.isSingleton()) {
+                    Resource other = singletons.get(icap.getName());
+                    if (other != null) {
+                        union(parents, res, other);
+                    } else {
+                        singletons.put(icap.getName(), res);
+                    }
+                }
+            }
+
+            for (Requirement req : res.getRequirements(null)) {
+                for (Capability cap : context.findProviders(req)) {
+                    Resource provider = cap.getResource();
+                    if (provider != res && !wirings.containsKey(provider)) {
+                        union(parents, res, provider);
+                        queue.add(provider);
+                    }
+                }
+            }
+        }
+
+        Map<Resource, ResolveComponent> components = new LinkedHashMap<Resource, ResolveComponent>();
+        for (Resource res : manres) {
+            getComponent(components, find(parents, res)).mandatory.add(res);
+        }
+        for (Resource res : optres) {
+            getComponent(components, find(parents, res)).optional.add(res);
+        }
+        return new ArrayList<ResolveComponent>(components.values());
+    }
+
+    private static ResolveComponent getComponent(Map<Resource, ResolveComponent> components, Resource root) {
+        ResolveComponent comp = components.get(root);
+        if (comp == null) {
+            comp = new ResolveComponent();
+            components.put(root, comp);
+        }
+        return comp;
+    }
+
+    private static Resource find(Map<Resource, Resource> parents, Resource res) {
+        Resource root = res;
+        Resource parent = parents.get(root);
+        while (parent != null) {
+            root = parent;
+            parent = parents.get(root);
+        }
+        // Compress the path
+        while (res != root) {
+            Resource next = parents.get(res);
+            parents.put(res, root);
+            res = next;
+        }
+        return root;
+    }
+
+    private static void union(Map<Resource, Resource> parents, Resource res1, Resource res2) {
+        Resource root1 = find(parents, res1);
+        Resource root2 = find(parents, res2);
+        if (root1 != root2) {
+            parents.put(root2, root1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResolveComponent[mandatory=" + mandatory + ",optional=" + optional + "]";
+    }
+}
@@ -25,6 +25,7 @@ import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
@@ -48,15 +49,25 @@ final class RevisionContent implements EntriesProvider {
 
     private final UserBundleRevision userRev;
     private final VirtualFile virtualFile;
+    private final MappedJarFile mappedJar;
     private final String identity;
     private final int contentId;
     private boolean closedMarker;
 
     RevisionContent(UserBundleRevision brev, OSGiMetaData metadata, long bundleId, int contentId, VirtualFile rootFile) {
+        this(brev, metadata, bundleId, contentId, rootFile, null);
+    }
+
+    /**
+     * Create the revision content with an optional {@link MappedJarFile} that has the same content as the root file.
+     * Entries are then served from the mapping instead of the virtual file.
+     */
+    RevisionContent(UserBundleRevision brev, OSGiMetaData metadata, long bundleId, int contentId, VirtualFile rootFile, MappedJarFile mappedJar) {
         assert brev != null : "Null userRev";
         assert rootFile != null : "Null rootFile";
         this.userRev = brev;
         this.virtualFile = rootFile;
+        this.mappedJar = mappedJar;
         this.contentId = contentId;
 
         String symbolicName = metadata.getBundleSymbolicName();
@@ -108,9 +119,21 @@ final class RevisionContent implements EntriesProvider {
         return virtualFile;
     }
 
+    /**
+     * Get the mapped content or null if the entries are served from the virtual file
+     */
+    MappedJarFile getMappedJarFile() {
+        assertNotClosed();
+        return mappedJar;
+    }
+
     @Override
     public URL getEntry(String path) {
         assertNotClosed();
+        if (mappedJar != null) {
+            String entryPath = MappedJarFile.normalize(path);
+            return mappedJar.contains(entryPath) ? getMappedURL(entryPath) : null;
+        }
         VirtualFile child;
         try {
             child = virtualFile.getChild(path);
@@ -124,6 +147,9 @@ final class RevisionContent implements EntriesProvider {
     @Override
     public Enumeration<URL> findEntries(String path, String pattern, boolean recurse) {
         assertNotClosed();
+        if (mappedJar != null) {
+            return findMappedEntries(path, pattern, recurse);
+        }
         try {
             Enumeration<URL> urls = virtualFile.findEntries(path, pattern, recurse);
             return getBundleURLs(urls);
@@ -135,6 +161,9 @@ final class RevisionContent implements EntriesProvider {
     @Override
     public Enumeration<String> getEntryPaths(String path) {
         assertNotClosed();
+        if (mappedJar != null) {
+            return getMappedEntryPaths(path);
+        }
         try {
             Enumeration<String> entryPaths = virtualFile.getEntryPaths(path);
             if (entryPaths != null && entryPaths.hasMoreElements())
@@ -148,6 +177,9 @@ final class RevisionContent implements EntriesProvider {
 
     void close() {
         VFSUtils.safeClose(virtualFile);
+        if (mappedJar != null) {
+            mappedJar.close();
+        }
         closedMarker = true;
     }
 
@@ -157,6 +189,88 @@ final class RevisionContent implements EntriesProvider {
         }
     }
 
+    private Enumeration<URL> findMappedEntries(String path, String pattern, boolean recurse) {
+        String parentPath = MappedJarFile.normalize(path);
+        if (!mappedJar.isDirectory(parentPath))
+            return null;
+
+        Vector<URL> result = new Vector<URL>();
+        addMappedEntries(result, parentPath, pattern != null ? pattern : "*", recurse);
+        return result.isEmpty() ? null : result.elements();
+    }
+
+    private void addMappedEntries(Vector<URL> result, String parentPath, String pattern, boolean recurse) {
+        for (String childPath : mappedJar.getChildren(parentPath)) {
+            String simpleName = childPath.substring(childPath.lastIndexOf('/') + 1);
+            if (matchesPattern(simpleName, pattern)) {
+                result.add(getMappedURL(childPath));
+            }
+            if (recurse && mappedJar.isDirectory(childPath)) {
+                addMappedEntries(result, childPath, pattern, recurse);
+            }
+        }
+    }
+
+    private Enumeration<String> getMappedEntryPaths(String path) {
+        Vector<String> result = new Vector<String>();
+        String parentPath = MappedJarFile.normalize(path);
+        if (mappedJar.isDirectory(parentPath)) {
+            for (String childPath : mappedJar.getChildren(parentPath)) {
+                result.add(mappedJar.isDirectory(childPath) ? childPath + "/" : childPath);
+            }
+        }
+        return result.isEmpty() ? null : result.elements();
+    }
+
+    /**
+     * Match a file name against a pattern that may contain '*' wildcards
+     */
+    static boolean matchesPattern(String name, String pattern) {
+        int starIndex = pattern.indexOf('*');
+        if (starIndex < 0)
+            return name.equals(pattern);
+        if (!name.startsWith(pattern.substring(0, starIndex)))
+            return false;
+
+        int nameIndex = starIndex;
+        int patternIndex = starIndex + 1;
+        while (true) {
+            int nextStar = pattern.indexOf('*', patternIndex);
+            if (nextStar < 0) {
+                String suffix = pattern.substring(patternIndex);
+                return name.length() - suffix.length() >= nameIndex && name.endsWith(suffix);
+            }
+            String part = pattern.substring(patternIndex, nextStar);
+            int partIndex = name.indexOf(part, nameIndex);
+            if (partIndex < 0)
+                return false;
+            nameIndex = partIndex + part.length();
+            patternIndex = nextStar + 1;
+        }
+    }
+
+    private URL getMappedURL(final String entryPath) {
+        URLStreamHandler streamHandler = new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) throws IOException {
+                return new MappedURLConnection(url, MappedJarFile.normalize(url.getPath()));
+            }
+        };
+
+        StringBuilder path = new StringBuilder(entryPath.length() + 2);
+        path.append('/').append(entryPath);
+        if (entryPath.length() > 0 && mappedJar.isDirectory(entryPath)) {
+            path.append('/');
+        }
+
+        try {
+            return new URL(BundleProtocolHandler.PROTOCOL_NAME, identity, -1, path.toString(), streamHandler);
+        } catch (IOException ex) {
+            LOGGER.errorCannotGetEntry(ex, entryPath, userRev);
+            return null;
+        }
+    }
+
     private Enumeration<URL> getBundleURLs(Enumeration<URL> urls) throws IOException {
         if (urls == null)
             return null;
@@ -205,6 +319,35 @@ final class RevisionContent implements EntriesProvider {
         return new URL(BundleProtocolHandler.PROTOCOL_NAME, identity, -1, path.toString(), streamHandler);
     }
 
+    private class MappedURLConnection extends URLConnection {
+
+        private final String entryPath;
+
+        MappedURLConnection(URL url, String entryPath) {
+            super(url);
+            this.entryPath = entryPath;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (!mappedJar.contains(entryPath))
+                throw MESSAGES.cannotObtainContent(url);
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return mappedJar.openStream(entryPath);
+        }
+
+        @Override
+        public int getContentLength() {
+            long size = mappedJar.getSize(entryPath);
+            return size <= Integer.MAX_VALUE ? (int) size : -1;
+        }
+    }
+
     @Override
     public int hashCode() {
         return toString().hashCode();
@@ -55,7 +55,12 @@ final class RevisionContentResourceLoader implements IterableResourceLoader {
     RevisionContentResourceLoader(HostBundleRevision hostRev, RevisionContent revContent) {
         assert hostRev != null : "Null hostRev";
         assert revContent != null : "Null revContent";
-        this.delegate = new VirtualFileResourceLoader(revContent.getVirtualFile());
+        MappedJarFile mappedJar = revContent.getMappedJarFile();
+        if (mappedJar != null) {
+            this.delegate = new MappedJarResourceLoader(revContent, mappedJar);
+        } else {
+            this.delegate = new VirtualFileResourceLoader(revContent.getVirtualFile());
+        }
         this.revContent = revContent;
         this.hostRev = hostRev;
     }
@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.resolver.XBundleRevision;
+
+/**
+ * Remembers the verdict of {@link ServiceStateImpl#isAssignableTo(org.osgi.framework.Bundle, String)}
+ * per requesting revision, owner revision and class name.
+ *
+ * A verdict depends on the class loaders of both revisions. It must be invalidated when
+ * either revision is refreshed, updated or uninstalled, and when the requesting revision gains a dynamic wire.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ServiceAssignabilityCache {
+
+    // requesting revision => owner revision => class name => verdict
+    private final ConcurrentMap<XBundleRevision, ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>>> verdicts = new ConcurrentHashMap<XBundleRevision, ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>>>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Get the current generation, which must be obtained before a verdict is computed.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Get the cached verdict or null
+     */
+    Boolean getVerdict(XBundleRevision requester, XBundleRevision owner, String className) {
+        ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>> requesterVerdicts = verdicts.get(requester);
+        if (requesterVerdicts == null)
+            return null;
+
+        ConcurrentMap<String, Boolean> ownerVerdicts = requesterVerdicts.get(owner);
+        return ownerVerdicts != null ? ownerVerdicts.get(className) : null;
+    }
+
+    /**
+     * Cache a verdict that was computed in the given generation.
+     * The verdict is dropped if an invalidation happened in the meantime.
+     */
+    void putVerdict(XBundleRevision requester, XBundleRevision owner, String className, boolean verdict, long computedIn) {
+        ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>> requesterVerdicts = verdicts.get(requester);
+        if (requesterVerdicts == null) {
+            ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>> newVerdicts = new ConcurrentHashMap<XBundleRevision, ConcurrentMap<String, Boolean>>();
+            requesterVerdicts = verdicts.putIfAbsent(requester, newVerdicts);
+            if (requesterVerdicts == null)
+                requesterVerdicts = newVerdicts;
+        }
+        ConcurrentMap<String, Boolean> ownerVerdicts = requesterVerdicts.get(owner);
+        if (ownerVerdicts == null) {
+            ConcurrentMap<String, Boolean> newVerdicts = new ConcurrentHashMap<String, Boolean>();
+            ownerVerdicts = requesterVerdicts.putIfAbsent(owner, newVerdicts);
+            if (ownerVerdicts == null)
+                ownerVerdicts = newVerdicts;
+        }
+        Boolean value = Boolean.valueOf(verdict);
+        ownerVerdicts.put(className, value);
+        if (generation.get() != computedIn) {
+            ownerVerdicts.remove(className, value);
+        }
+    }
+
+    /**
+     * Drop all verdicts that involve the given revision, either as requester or as owner.
+     */
+    void invalidate(XBundleRevision brev) {
+        generation.incrementAndGet();
+        verdicts.remove(brev);
+        for (ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>> requesterVerdicts : verdicts.values()) {
+            requesterVerdicts.remove(brev);
+        }
+    }
+
+    int size() {
+        int result = 0;
+        for (ConcurrentMap<XBundleRevision, ConcurrentMap<String, Boolean>> requesterVerdicts : verdicts.values()) {
+            for (ConcurrentMap<String, Boolean> ownerVerdicts : requesterVerdicts.values()) {
+                result += ownerVerdicts.size();
+            }
+        }
+        return result;
+    }
+}
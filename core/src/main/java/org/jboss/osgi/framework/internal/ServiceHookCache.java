@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.framework.spi.ServiceState;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Ready-to-call hook services in the order in which they must be called.
+ *
+ * The registry generation is incremented whenever a hook service is registered, modified or unregistered.
+ * A hook list is only rebuilt when it was created in an older generation.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ServiceHookCache {
+
+    private static final String HOOKS_PACKAGE_PREFIX = "org.osgi.framework.hooks.";
+
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<String, HookSnapshot> snapshots = new ConcurrentHashMap<String, HookSnapshot>();
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Called after a service was registered, modified or unregistered.
+     */
+    void serviceChanged(ServiceState<?> serviceState) {
+        for (String className : serviceState.getClassNames()) {
+            if (className.startsWith(HOOKS_PACKAGE_PREFIX)) {
+                generation.incrementAndGet();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the hooks of the given type. The hook with the highest ranking comes first.
+     */
+    <T> List<T> getHooks(Class<T> hookType, BundleContext syscontext) {
+        long current = generation.get();
+        HookSnapshot snapshot = snapshots.get(hookType.getName());
+        if (snapshot != null && snapshot.generation == current) {
+            return snapshot.getHooks();
+        }
+        // A concurrent change increments the generation, which causes the next call to rebuild
+        List<T> hooks = lookupHooks(hookType, syscontext);
+        snapshots.put(hookType.getName(), new HookSnapshot(current, hooks));
+        return hooks;
+    }
+
+    /**
+     * Get the hooks of the given type from the registry. The hook with the highest ranking comes first.
+     */
+    static <T> List<T> lookupHooks(Class<T> hookType, BundleContext syscontext) {
+        ServiceReference<?>[] srefs = null;
+        try {
+            srefs = syscontext.getServiceReferences(hookType.getName(), null);
+        } catch (InvalidSyntaxException e) {
+            // ignore
+        }
+        if (srefs == null || srefs.length == 0)
+            return Collections.emptyList();
+
+        // The calling order of the hooks is defined by the reversed compareTo ordering of their Service
+        // Reference objects. That is, the service with the highest ranking number is called first.
+        List<T> hooks = new ArrayList<T>(srefs.length);
+        for (int i = srefs.length - 1; i >= 0; i--) {
+            Object hook;
+            try {
+                hook = syscontext.getService(srefs[i]);
+            } catch (IllegalStateException ex) {
+                // The hook was unregistered concurrently
+                continue;
+            }
+            if (hookType.isInstance(hook)) {
+                hooks.add(hookType.cast(hook));
+            }
+        }
+        return Collections.unmodifiableList(hooks);
+    }
+
+    private static final class HookSnapshot {
+
+        private final long generation;
+        private final List<?> hooks;
+
+        HookSnapshot(long generation, List<?> hooks) {
+            this.generation = generation;
+            this.hooks = hooks;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> List<T> getHooks() {
+            return (List<T>) hooks;
+        }
+    }
+}
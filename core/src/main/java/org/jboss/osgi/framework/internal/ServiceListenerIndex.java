@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.osgi.framework.internal.FrameworkEventsImpl.ServiceListenerRegistration;
+
+/**
+ * The registered service listeners by the objectClass that their filter requires.
+ *
+ * Listeners whose filter does not constrain the objectClass to a single name go to the residual listeners.
+ * The listener arrays are immutable, so that events can be delivered without locking. Modifications must
+ * be synchronized by the caller.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ServiceListenerIndex {
+
+    static final ServiceListenerRegistration[] NO_LISTENERS = new ServiceListenerRegistration[0];
+
+    private final ConcurrentMap<String, ServiceListenerRegistration[]> classListeners = new ConcurrentHashMap<String, ServiceListenerRegistration[]>();
+    private volatile ServiceListenerRegistration[] residualListeners = NO_LISTENERS;
+
+    /**
+     * Get the listeners whose filter requires the given class name.
+     */
+    ServiceListenerRegistration[] getListeners(String className) {
+        ServiceListenerRegistration[] result = classListeners.get(className);
+        return result != null ? result : NO_LISTENERS;
+    }
+
+    /**
+     * Get the listeners that must see every service event.
+     */
+    ServiceListenerRegistration[] getResidualListeners() {
+        return residualListeners;
+    }
+
+    void addListener(ServiceListenerRegistration slreg) {
+        String className = slreg.getObjectClass();
+        if (className != null) {
+            classListeners.put(className, append(getListeners(className), slreg));
+        } else {
+            residualListeners = append(residualListeners, slreg);
+        }
+    }
+
+    void removeListener(ServiceListenerRegistration slreg) {
+        String className = slreg.getObjectClass();
+        if (className != null) {
+            ServiceListenerRegistration[] listeners = remove(getListeners(className), slreg);
+            if (listeners.length > 0) {
+                classListeners.put(className, listeners);
+            } else {
+                classListeners.remove(className);
+            }
+        } else {
+            residualListeners = remove(residualListeners, slreg);
+        }
+    }
+
+    void clear() {
+        classListeners.clear();
+        residualListeners = NO_LISTENERS;
+    }
+
+    private static ServiceListenerRegistration[] append(ServiceListenerRegistration[] listeners, ServiceListenerRegistration slreg) {
+        ServiceListenerRegistration[] result = new ServiceListenerRegistration[listeners.length + 1];
+        System.arraycopy(listeners, 0, result, 0, listeners.length);
+        result[listeners.length] = slreg;
+        return result;
+    }
+
+    private static ServiceListenerRegistration[] remove(ServiceListenerRegistration[] listeners, ServiceListenerRegistration slreg) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == slreg) {
+                if (listeners.length == 1)
+                    return NO_LISTENERS;
+                ServiceListenerRegistration[] result = new ServiceListenerRegistration[listeners.length - 1];
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, listeners.length - i - 1);
+                return result;
+            }
+        }
+        return listeners;
+    }
+}
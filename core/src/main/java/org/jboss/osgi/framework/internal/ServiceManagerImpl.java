@@ -24,26 +24,29 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.internal.ServicePropertyIndex.IndexOperand;
+import org.jboss.osgi.framework.spi.BundleManager;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
 import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
 import org.jboss.osgi.resolver.spi.RemoveOnlyCollection;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceException;
@@ -61,14 +64,26 @@ import org.osgi.framework.hooks.service.ListenerHook.ListenerInfo;
  */
 public final class ServiceManagerImpl implements ServiceManager {
 
+    private final BundleManager bundleManager;
     private final FrameworkEvents frameworkEvents;
-    private final Map<String, List<ServiceState<?>>> serviceContainer = new HashMap<String, List<ServiceState<?>>>();
+    // Immutable, sorted snapshots of the registered services per class name. Lookups never block.
+    private final ConcurrentMap<String, ServiceSnapshot> serviceContainer = new ConcurrentHashMap<String, ServiceSnapshot>();
+    private final AtomicReference<ServiceSnapshot> allServices = new AtomicReference<ServiceSnapshot>(ServiceSnapshot.EMPTY);
+    // The optional index of services by configured property keys
+    private final ServicePropertyIndex propertyIndex;
+    // The memoized isAssignableTo verdicts
+    private final ServiceAssignabilityCache assignabilityCache = new ServiceAssignabilityCache();
+    // The ranking ordered hook services, rebuilt when a hook service changes
+    private final ServiceHookCache hookCache = new ServiceHookCache();
     private final ThreadLocal<Bundle> getServiceRecursion = new ThreadLocal<Bundle>();
     private final AtomicLong identityGenerator = new AtomicLong();
 
 
-    public ServiceManagerImpl(FrameworkEvents frameworkEvents) {
+    public ServiceManagerImpl(BundleManager bundleManager, FrameworkEvents frameworkEvents) {
+        this.bundleManager = bundleManager;
         this.frameworkEvents = frameworkEvents;
+        Object indexedKeys = bundleManager.getProperty(Constants.PROPERTY_SERVICE_INDEXED_PROPERTIES);
+        this.propertyIndex = ServicePropertyIndex.create(indexedKeys != null ? indexedKeys.toString() : null);
     }
 
     @Override
@@ -81,6 +96,22 @@ public final class ServiceManagerImpl implements ServiceManager {
         frameworkEvents.fireServiceEvent(bundle, type, serviceState);
     }
 
+    ServiceHookCache getHookCache() {
+        return hookCache;
+    }
+
+    ServiceAssignabilityCache getAssignabilityCache() {
+        return assignabilityCache;
+    }
+
+    /**
+     * Drop the memoized assignability verdicts that involve the given revision.
+     * Called when the revision is refreshed, updated, uninstalled or gets a dynamic wire.
+     */
+    void invalidateAssignability(XBundleRevision brev) {
+        assignabilityCache.invalidate(brev);
+    }
+
     private long getNextServiceId() {
         return identityGenerator.incrementAndGet();
     }
@@ -125,18 +156,7 @@ public final class ServiceManagerImpl implements ServiceManager {
         ServiceState<?> serviceState = new ServiceStateImpl<Object>(this, bundleState, serviceId, classNames, valueProvider, properties);
         LOGGER.debugf("Register service: %s", serviceState);
 
-        synchronized (serviceContainer) {
-            for (String className : classNames) {
-                List<ServiceState<?>> serviceStates = serviceContainer.get(className);
-                if (serviceStates != null) {
-                    serviceStates.add(serviceState);
-                } else {
-                    serviceStates = new CopyOnWriteArrayList<ServiceState<?>>();
-                    serviceStates.add(serviceState);
-                    serviceContainer.put(className, serviceStates);
-                }
-            }
-        }
+        addServiceState(serviceState);
         bundleState.addRegisteredService(serviceState);
 
         // Call the newly added ListenerHook.added() method
@@ -163,7 +183,20 @@ public final class ServiceManagerImpl implements ServiceManager {
         assert clazz != null : "Null clazz";
 
         boolean checkAssignable = (bundle.getBundleId() != 0);
-        List<ServiceState<?>> result = getServiceReferencesInternal(bundle, clazz, NoFilter.INSTANCE, checkAssignable);
+
+        // The snapshot is ordered by (ranking, service id). Without find hooks
+        // the highest ranked matching service can be read directly from the end.
+        if (isFindHookApplicable(clazz) == false) {
+            ServiceState<?>[] serviceStates = getServiceSnapshot(clazz).serviceStates;
+            for (int i = serviceStates.length - 1; i >= 0; i--) {
+                ServiceState<?> serviceState = serviceStates[i];
+                if (isMatchingService(bundle, serviceState, clazz, NoFilter.INSTANCE, checkAssignable))
+                    return serviceState;
+            }
+            return null;
+        }
+
+        List<ServiceState<?>> result = getServiceReferencesInternal(bundle, clazz, NoFilter.INSTANCE, null, checkAssignable);
         result = processFindHooks(bundle, clazz, null, true, result);
         if (result.isEmpty())
             return null;
@@ -187,48 +220,55 @@ public final class ServiceManagerImpl implements ServiceManager {
     @Override
     public List<ServiceState<?>> getServiceReferences(XBundle bundle, String clazz, String filterStr, boolean checkAssignable) throws InvalidSyntaxException {
         Filter filter = NoFilter.INSTANCE;
-        if (filterStr != null)
-            filter = FrameworkUtil.createFilter(filterStr);
+        IndexOperand[] operands = null;
+        if (filterStr != null) {
+            FilterCache filterCache = FilterCache.getInstance();
+            filter = filterCache.createFilter(filterStr);
+            if (propertyIndex != null)
+                operands = filterCache.getIndexOperands(filterStr, filter);
+        }
 
-        List<ServiceState<?>> result = getServiceReferencesInternal(bundle, clazz, filter, checkAssignable);
+        List<ServiceState<?>> result = getServiceReferencesInternal(bundle, clazz, filter, operands, checkAssignable);
         result = processFindHooks(bundle, clazz, filterStr, checkAssignable, result);
         return result;
     }
 
-    private List<ServiceState<?>> getServiceReferencesInternal(final XBundle bundle, String className, Filter filter, boolean checkAssignable) {
+    private List<ServiceState<?>> getServiceReferencesInternal(final XBundle bundle, String className, Filter filter, IndexOperand[] operands, boolean checkAssignable) {
         assert bundle != null : "Null bundleState";
         assert filter != null : "Null filter";
 
-        Set<ServiceState<?>> initialSet = new HashSet<ServiceState<?>>();
-        synchronized (serviceContainer) {
-            if (className != null) {
-                List<ServiceState<?>> list = serviceContainer.get(className);
-                if (list != null) {
-                    initialSet.addAll(list);
-                }
-            } else {
-                for (List<ServiceState<?>> list : serviceContainer.values()) {
-                    initialSet.addAll(list);
-                }
-            }
-        }        
-
-        if (initialSet.isEmpty())
+        ServiceSnapshot snapshot = getServiceSnapshot(className);
+        if (snapshot.isEmpty())
             return Collections.emptyList();
 
-        Set<ServiceState<?>> resultset = new HashSet<ServiceState<?>>();
-        for (ServiceState<?> serviceState : initialSet) {
-            if (isMatchingService(bundle, serviceState, className, filter, checkAssignable)) {
-                resultset.add(serviceState);
-            }
+        // Narrow the candidates through the property index, which may return services of other classes
+        boolean checkClassName = false;
+        if (propertyIndex != null && operands != null) {
+            ServiceSnapshot candidates = propertyIndex.getCandidates(operands, snapshot, serviceContainer);
+            checkClassName = (className != null && candidates != snapshot);
+            snapshot = candidates;
         }
 
-        // Sort the result
-        List<ServiceState<?>> resultList = new ArrayList<ServiceState<?>>(resultset);
-        if (resultList.size() > 1)
-            Collections.sort(resultList, ServiceReferenceComparator.getInstance());
+        // The snapshot is already sorted. Only copy it when the first service does not match,
+        // so that a lookup which matches everything does not allocate at all.
+        ServiceState<?>[] serviceStates = snapshot.serviceStates;
+        List<ServiceState<?>> resultList = null;
+        for (int i = 0; i < serviceStates.length; i++) {
+            ServiceState<?> serviceState = serviceStates[i];
+            boolean match = isMatchingService(bundle, serviceState, className, filter, checkAssignable);
+            if (match && checkClassName)
+                match = serviceState.getClassNames().contains(className);
+            if (resultList == null && match == false) {
+                resultList = new ArrayList<ServiceState<?>>(serviceStates.length - 1);
+                for (int j = 0; j < i; j++) {
+                    resultList.add(serviceStates[j]);
+                }
+            } else if (resultList != null && match == true) {
+                resultList.add(serviceState);
+            }
+        }
 
-        return Collections.unmodifiableList(resultList);
+        return resultList != null ? Collections.unmodifiableList(resultList) : snapshot.serviceList;
     }
 
     private boolean isMatchingService(XBundle bundle, ServiceState<?> serviceState, String clazzName, Filter filter, boolean checkAssignable) {
@@ -289,19 +329,8 @@ public final class ServiceManagerImpl implements ServiceManager {
             if (serviceState.isUnregistered())
                 return;
 
-            synchronized (serviceContainer) {
-                for (String className : serviceState.getClassNames()) {
-                    LOGGER.debugf("Unregister service: %s", className);
-                    try {
-                        List<ServiceState<?>> serviceStates = serviceContainer.get(className);
-                        if (serviceStates != null) {
-                            serviceStates.remove(serviceState);
-                        }
-                    } catch (RuntimeException ex) {
-                        LOGGER.errorCannotRemoveService(ex, className);
-                    }
-                }
-            }
+            LOGGER.debugf("Unregister service: %s", serviceState);
+            removeServiceState(serviceState);
 
             XBundle serviceOwner = serviceState.getServiceOwner();
 
@@ -341,6 +370,77 @@ public final class ServiceManagerImpl implements ServiceManager {
         return useCount >= 0;
     }
 
+    /**
+     * Set the new ranking and reposition the service in the snapshots that contain it.
+     */
+    void updateServiceRanking(ServiceStateImpl<?> serviceState, int ranking) {
+        synchronized (serviceState) {
+            serviceState.setServiceRanking(ranking);
+            for (String className : serviceState.getClassNames()) {
+                ServiceSnapshot.reposition(serviceContainer, className, serviceState);
+            }
+            ServiceSnapshot snapshot;
+            do {
+                snapshot = allServices.get();
+            } while (!allServices.compareAndSet(snapshot, snapshot.reposition(serviceState)));
+            if (propertyIndex != null) {
+                propertyIndex.repositionService(serviceState);
+            }
+        }
+    }
+
+    /**
+     * Update the property index after the service properties have been modified.
+     */
+    void updateServiceProperties(ServiceStateImpl<?> serviceState, Dictionary<String, ?> prevProperties) {
+        if (propertyIndex != null) {
+            synchronized (serviceState) {
+                propertyIndex.updateService(serviceState, prevProperties);
+            }
+        }
+        hookCache.serviceChanged(serviceState);
+    }
+
+    private ServiceSnapshot getServiceSnapshot(String className) {
+        return className != null ? ServiceSnapshot.get(serviceContainer, className) : allServices.get();
+    }
+
+    private void addServiceState(ServiceState<?> serviceState) {
+        for (String className : serviceState.getClassNames()) {
+            ServiceSnapshot.add(serviceContainer, className, serviceState);
+        }
+        ServiceSnapshot snapshot;
+        do {
+            snapshot = allServices.get();
+        } while (!allServices.compareAndSet(snapshot, snapshot.add(serviceState)));
+        if (propertyIndex != null) {
+            propertyIndex.addService(serviceState);
+        }
+        hookCache.serviceChanged(serviceState);
+    }
+
+    private void removeServiceState(ServiceState<?> serviceState) {
+        for (String className : serviceState.getClassNames()) {
+            ServiceSnapshot.remove(serviceContainer, className, serviceState);
+        }
+        ServiceSnapshot snapshot;
+        do {
+            snapshot = allServices.get();
+        } while (!allServices.compareAndSet(snapshot, snapshot.remove(serviceState)));
+        if (propertyIndex != null) {
+            propertyIndex.removeService(serviceState);
+        }
+        hookCache.serviceChanged(serviceState);
+    }
+
+    private boolean isFindHookApplicable(String clazz) {
+        // Event and Find Hooks can not be used to hide the services from the framework.
+        if (clazz != null && clazz.startsWith(FindHook.class.getPackage().getName()))
+            return false;
+
+        return getServiceSnapshot(FindHook.class.getName()).isEmpty() == false;
+    }
+
     /*
      * The FindHook is called when a target bundle searches the service registry with the getServiceReference or
      * getServiceReferences methods. A registered FindHook service gets a chance to inspect the returned set of service
@@ -352,23 +452,18 @@ public final class ServiceManagerImpl implements ServiceManager {
         if (serviceStates.isEmpty())
             return serviceStates;
 
-        List<ServiceState<?>> hookRefs = getServiceReferencesInternal(bundle, FindHook.class.getName(), NoFilter.INSTANCE, true);
-        if (hookRefs.isEmpty())
-            return serviceStates;
-
         // Event and Find Hooks can not be used to hide the services from the framework.
         if (clazz != null && clazz.startsWith(FindHook.class.getPackage().getName()))
             return serviceStates;
 
         // The order in which the find hooks are called is the reverse compareTo ordering of
         // their ServiceReferences. That is, the service with the highest ranking number must be called first.
-        List<ServiceReference<?>> sortedHookRefs = new ArrayList<ServiceReference<?>>(hookRefs);
-        Collections.reverse(sortedHookRefs);
+        BundleContext syscontext = bundleManager.getSystemBundle().getBundleContext();
+        List<FindHook> hooks = hookCache.getHooks(FindHook.class, syscontext);
+        if (hooks.isEmpty())
+            return serviceStates;
 
-        List<FindHook> hooks = new ArrayList<FindHook>();
         BundleContext context = bundle.getBundleContext();
-        for (ServiceReference<?> hookRef : sortedHookRefs)
-            hooks.add((FindHook) context.getService(hookRef));
 
         Collection<ServiceReference<?>> hookParam = new ArrayList<ServiceReference<?>>();
         for (ServiceState<?> aux : serviceStates)
@@ -391,5 +486,4 @@ public final class ServiceManagerImpl implements ServiceManager {
 
         return result;
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,393 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.osgi.framework.spi.ServiceState;
+import org.osgi.framework.Constants;
+
+/**
+ * An optional secondary index of services by the values of configured property keys.
+ *
+ * The equality and presence operands of a top level conjunction like <code>(&(objectClass=X)(tenant=abc))</code>
+ * are answered from the index. The returned candidates are a superset of the matching services, the caller must
+ * still match the filter against each of them. Only String values are indexed. Services that have a value of
+ * another type for an indexed key are always included in the candidates for that key.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ServicePropertyIndex {
+
+    private static final String OBJECTCLASS_KEY = Constants.OBJECTCLASS.toLowerCase(Locale.ENGLISH);
+
+    private final Set<String> indexedKeys;
+    // key => services that have the property
+    private final ConcurrentMap<String, ServiceSnapshot> presentServices = new ConcurrentHashMap<String, ServiceSnapshot>();
+    // key => services that have a property value which is not indexable
+    private final ConcurrentMap<String, ServiceSnapshot> opaqueServices = new ConcurrentHashMap<String, ServiceSnapshot>();
+    // key => value => services that have the property value
+    private final Map<String, ConcurrentMap<String, ServiceSnapshot>> valueServices = new ConcurrentHashMap<String, ConcurrentMap<String, ServiceSnapshot>>();
+
+    private ServicePropertyIndex(Set<String> indexedKeys) {
+        this.indexedKeys = indexedKeys;
+        for (String key : indexedKeys) {
+            valueServices.put(key, new ConcurrentHashMap<String, ServiceSnapshot>());
+        }
+    }
+
+    /**
+     * Create the index for the given comma separated list of property keys.
+     *
+     * @return The index or <code>null</code> if there are no keys to index
+     */
+    static ServicePropertyIndex create(String keysSpec) {
+        if (keysSpec == null)
+            return null;
+
+        Set<String> keys = new HashSet<String>();
+        for (String key : keysSpec.split(",")) {
+            key = key.trim();
+            if (key.length() > 0) {
+                keys.add(key.toLowerCase(Locale.ENGLISH));
+            }
+        }
+        keys.remove(OBJECTCLASS_KEY);
+        return keys.isEmpty() ? null : new ServicePropertyIndex(Collections.unmodifiableSet(keys));
+    }
+
+    void addService(ServiceState<?> serviceState) {
+        for (String key : indexedKeys) {
+            addEntries(serviceState, key, serviceState.getProperty(key));
+        }
+    }
+
+    void removeService(ServiceState<?> serviceState) {
+        for (String key : indexedKeys) {
+            removeEntries(serviceState, key, serviceState.getProperty(key), null);
+        }
+    }
+
+    void updateService(ServiceState<?> serviceState, Dictionary<String, ?> prevProperties) {
+        for (String key : indexedKeys) {
+            Object prevValue = prevProperties != null ? prevProperties.get(key) : null;
+            Object currValue = serviceState.getProperty(key);
+
+            // Add the new entries before the stale ones get removed, so that concurrent lookups do not miss the service
+            addEntries(serviceState, key, currValue);
+            removeEntries(serviceState, key, prevValue, currValue);
+        }
+    }
+
+    void repositionService(ServiceState<?> serviceState) {
+        for (String key : indexedKeys) {
+            Object value = serviceState.getProperty(key);
+            if (value != null) {
+                ServiceSnapshot.reposition(presentServices, key, serviceState);
+                ServiceSnapshot.reposition(opaqueServices, key, serviceState);
+                ConcurrentMap<String, ServiceSnapshot> valueMap = valueServices.get(key);
+                for (String aux : getIndexValues(value)) {
+                    ServiceSnapshot.reposition(valueMap, aux, serviceState);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the candidate services for the given filter operands.
+     *
+     * The candidates are the intersection of the index entries of all operands that can be answered from the index.
+     * The intersection is computed by probing the services of the smallest entry against the other operands.
+     *
+     * @param operands The operands of the filter, see {@link #parseOperands(String)}
+     * @param snapshot The services registered under the requested class, or all services
+     * @param classServices The services by class name, used for objectClass operands
+     * @return The given snapshot or a smaller superset of the services that can match the filter
+     */
+    ServiceSnapshot getCandidates(IndexOperand[] operands, ServiceSnapshot snapshot, Map<String, ServiceSnapshot> classServices) {
+        ServiceSnapshot result = snapshot;
+        int resultIndex = -1;
+        int answered = 0;
+        for (int i = 0; i < operands.length; i++) {
+            ServiceSnapshot candidates = getOperandCandidates(operands[i], classServices);
+            if (candidates != null) {
+                answered++;
+                if (candidates.size() < result.size()) {
+                    result = candidates;
+                    resultIndex = i;
+                }
+            }
+        }
+        if (answered < 2 || resultIndex < 0 || result.isEmpty())
+            return result;
+
+        // Retain the services that are also in the index entries of the other operands
+        ServiceState<?>[] serviceStates = result.serviceStates;
+        ServiceState<?>[] retained = null;
+        int count = 0;
+        for (int i = 0; i < serviceStates.length; i++) {
+            ServiceState<?> serviceState = serviceStates[i];
+            boolean match = true;
+            for (int j = 0; match && j < operands.length; j++) {
+                if (j != resultIndex) {
+                    match = isOperandCandidate(operands[j], serviceState);
+                }
+            }
+            if (retained == null && match == false) {
+                retained = new ServiceState<?>[serviceStates.length - 1];
+                System.arraycopy(serviceStates, 0, retained, 0, i);
+                count = i;
+            } else if (retained != null && match) {
+                retained[count++] = serviceState;
+            }
+        }
+        return retained != null ? ServiceSnapshot.create(Arrays.copyOf(retained, count)) : result;
+    }
+
+    // The index entry for an operand or null if the operand cannot be answered from the index
+    private ServiceSnapshot getOperandCandidates(IndexOperand operand, Map<String, ServiceSnapshot> classServices) {
+        if (OBJECTCLASS_KEY.equals(operand.key)) {
+            if (operand.isPresence())
+                return null;
+            ServiceSnapshot aux = classServices.get(operand.value);
+            return aux != null ? aux : ServiceSnapshot.EMPTY;
+        }
+        if (indexedKeys.contains(operand.key) == false)
+            return null;
+        if (operand.isPresence())
+            return ServiceSnapshot.get(presentServices, operand.key);
+
+        ServiceSnapshot matching = ServiceSnapshot.get(valueServices.get(operand.key), operand.value);
+        return matching.union(ServiceSnapshot.get(opaqueServices, operand.key));
+    }
+
+    // True if the service would be in the index entry for the operand, or if the operand is not answered from the index
+    private boolean isOperandCandidate(IndexOperand operand, ServiceState<?> serviceState) {
+        if (OBJECTCLASS_KEY.equals(operand.key)) {
+            return operand.isPresence() || serviceState.getClassNames().contains(operand.value);
+        }
+        if (indexedKeys.contains(operand.key) == false)
+            return true;
+
+        Object value = serviceState.getProperty(operand.key);
+        if (value == null)
+            return false;
+        if (operand.isPresence() || isIndexable(value) == false)
+            return true;
+        return getIndexValues(value).contains(operand.value);
+    }
+
+    /**
+     * Get the class name that a top level objectClass equality operand of the given filter requires.
+     *
+     * @param filterStr The normalized filter string
+     * @return The class name or <code>null</code> if the filter does not constrain the objectClass to a single name
+     */
+    static String getObjectClass(String filterStr) {
+        for (IndexOperand operand : parseOperands(filterStr)) {
+            if (OBJECTCLASS_KEY.equals(operand.key) && operand.isPresence() == false) {
+                return operand.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse the equality and presence operands of the top level conjunction of the given filter.
+     * Operands that the index cannot answer, like nested operations, substrings or ranges, are not returned.
+     *
+     * @param filterStr The normalized filter string
+     */
+    static IndexOperand[] parseOperands(String filterStr) {
+        List<IndexOperand> result = new ArrayList<IndexOperand>();
+        for (String operand : getConjunctionOperands(filterStr)) {
+            // Nested operations cannot be answered from the index
+            char first = operand.length() > 1 ? operand.charAt(1) : '&';
+            if (first == '&' || first == '|' || first == '!')
+                continue;
+
+            int index = operand.indexOf('=');
+            if (index < 2 || operand.charAt(operand.length() - 1) != ')')
+                continue;
+
+            char op = operand.charAt(index - 1);
+            if (op == '~' || op == '<' || op == '>')
+                continue;
+
+            String key = operand.substring(1, index).trim().toLowerCase(Locale.ENGLISH);
+            String value = unescapeValue(operand.substring(index + 1, operand.length() - 1));
+            if (value != null) {
+                result.add(new IndexOperand(key, value));
+            }
+        }
+        return result.toArray(new IndexOperand[result.size()]);
+    }
+
+    private void addEntries(ServiceState<?> serviceState, String key, Object value) {
+        if (value == null)
+            return;
+
+        ServiceSnapshot.add(presentServices, key, serviceState);
+        ConcurrentMap<String, ServiceSnapshot> valueMap = valueServices.get(key);
+        List<String> indexValues = getIndexValues(value);
+        for (String aux : indexValues) {
+            ServiceSnapshot.add(valueMap, aux, serviceState);
+        }
+        if (isIndexable(value) == false) {
+            ServiceSnapshot.add(opaqueServices, key, serviceState);
+        }
+    }
+
+    private void removeEntries(ServiceState<?> serviceState, String key, Object value, Object retainedValue) {
+        if (value == null)
+            return;
+
+        List<String> retainedValues = getIndexValues(retainedValue);
+        if (retainedValue == null) {
+            ServiceSnapshot.remove(presentServices, key, serviceState);
+        }
+        if (retainedValue == null || isIndexable(retainedValue)) {
+            ServiceSnapshot.remove(opaqueServices, key, serviceState);
+        }
+        ConcurrentMap<String, ServiceSnapshot> valueMap = valueServices.get(key);
+        for (String aux : getIndexValues(value)) {
+            if (retainedValues.contains(aux) == false) {
+                ServiceSnapshot.remove(valueMap, aux, serviceState);
+            }
+        }
+    }
+
+    // The String values of a property, which may be a String, String[] or Collection
+    private static List<String> getIndexValues(Object value) {
+        List<String> result = new ArrayList<String>();
+        if (value instanceof String) {
+            result.add((String) value);
+        } else if (value instanceof Object[]) {
+            for (Object aux : (Object[]) value) {
+                if (aux instanceof String) {
+                    result.add((String) aux);
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (Object aux : (Collection<?>) value) {
+                if (aux instanceof String) {
+                    result.add((String) aux);
+                }
+            }
+        }
+        return result;
+    }
+
+    // True if the filter semantics for the value are fully covered by its String values
+    private static boolean isIndexable(Object value) {
+        if (value instanceof String)
+            return true;
+        if (value instanceof String[])
+            return true;
+        if (value instanceof Collection) {
+            for (Object aux : (Collection<?>) value) {
+                if (aux instanceof String == false)
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // The operands of a top level conjunction, or the filter itself
+    private static List<String> getConjunctionOperands(String filterStr) {
+        if (filterStr.startsWith("(&") == false)
+            return Collections.singletonList(filterStr);
+
+        List<String> result = new ArrayList<String>();
+        int depth = 0;
+        int start = -1;
+        for (int i = 2; i < filterStr.length() - 1; i++) {
+            char ch = filterStr.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '(') {
+                if (depth++ == 0) {
+                    start = i;
+                }
+            } else if (ch == ')') {
+                if (--depth == 0) {
+                    result.add(filterStr.substring(start, i + 1));
+                }
+            }
+        }
+        return result;
+    }
+
+    // The unescaped value, "*" for a presence operand or null for a substring operand
+    private static String unescapeValue(String value) {
+        if ("*".equals(value))
+            return value;
+
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '*')
+                return null;
+            if (ch == '\\' && i + 1 < value.length()) {
+                ch = value.charAt(++i);
+            }
+            builder.append(ch);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * An equality or presence operand of a filter
+     */
+    static final class IndexOperand {
+
+        private final String key;
+        private final String value;
+
+        IndexOperand(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean isPresence() {
+            return "*".equals(value);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + key + "=" + value + ")";
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.osgi.framework.spi.ServiceState;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * An immutable array of services, sorted by (ranking, service id) through {@link ServiceReferenceComparator}.
+ * The highest ranked service is the last element. Modifications create a new snapshot, which is then
+ * swapped into the owning map with a compare-and-set.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class ServiceSnapshot {
+
+    static final ServiceSnapshot EMPTY = new ServiceSnapshot(new ServiceState<?>[0]);
+
+    final ServiceState<?>[] serviceStates;
+    final List<ServiceState<?>> serviceList;
+
+    private ServiceSnapshot(ServiceState<?>[] serviceStates) {
+        this.serviceStates = serviceStates;
+        this.serviceList = Collections.unmodifiableList(Arrays.asList(serviceStates));
+    }
+
+    boolean isEmpty() {
+        return serviceStates.length == 0;
+    }
+
+    int size() {
+        return serviceStates.length;
+    }
+
+    boolean contains(ServiceState<?> serviceState) {
+        return indexOf(serviceState) >= 0;
+    }
+
+    ServiceSnapshot add(ServiceState<?> serviceState) {
+        if (indexOf(serviceState) >= 0)
+            return this;
+
+        return new ServiceSnapshot(insert(serviceStates, serviceState));
+    }
+
+    ServiceSnapshot remove(ServiceState<?> serviceState) {
+        int index = indexOf(serviceState);
+        if (index < 0)
+            return this;
+        if (serviceStates.length == 1)
+            return EMPTY;
+
+        return new ServiceSnapshot(removeAt(serviceStates, index));
+    }
+
+    ServiceSnapshot reposition(ServiceState<?> serviceState) {
+        int index = indexOf(serviceState);
+        if (index < 0)
+            return this;
+
+        return new ServiceSnapshot(insert(removeAt(serviceStates, index), serviceState));
+    }
+
+    ServiceSnapshot union(ServiceSnapshot other) {
+        if (other.isEmpty())
+            return this;
+        if (isEmpty())
+            return other;
+
+        // Merge the two sorted arrays, dropping duplicates
+        Comparator<ServiceReference<?>> comparator = ServiceReferenceComparator.getInstance();
+        ServiceState<?>[] array = new ServiceState<?>[serviceStates.length + other.serviceStates.length];
+        int i = 0, j = 0, k = 0;
+        while (i < serviceStates.length && j < other.serviceStates.length) {
+            int result = comparator.compare(serviceStates[i], other.serviceStates[j]);
+            if (result < 0) {
+                array[k++] = serviceStates[i++];
+            } else if (result > 0) {
+                array[k++] = other.serviceStates[j++];
+            } else {
+                array[k++] = serviceStates[i++];
+                j++;
+            }
+        }
+        while (i < serviceStates.length)
+            array[k++] = serviceStates[i++];
+        while (j < other.serviceStates.length)
+            array[k++] = other.serviceStates[j++];
+
+        return new ServiceSnapshot(k < array.length ? Arrays.copyOf(array, k) : array);
+    }
+
+    /**
+     * Wrap an array of services that is already ranking ordered
+     */
+    static ServiceSnapshot create(ServiceState<?>[] serviceStates) {
+        return serviceStates.length > 0 ? new ServiceSnapshot(serviceStates) : EMPTY;
+    }
+
+    static ServiceSnapshot get(ConcurrentMap<String, ServiceSnapshot> map, String key) {
+        ServiceSnapshot snapshot = map.get(key);
+        return snapshot != null ? snapshot : EMPTY;
+    }
+
+    static void add(ConcurrentMap<String, ServiceSnapshot> map, String key, ServiceState<?> serviceState) {
+        ServiceSnapshot snapshot;
+        do {
+            snapshot = get(map, key);
+        } while (!replace(map, key, snapshot, snapshot.add(serviceState)));
+    }
+
+    static void remove(ConcurrentMap<String, ServiceSnapshot> map, String key, ServiceState<?> serviceState) {
+        ServiceSnapshot snapshot;
+        do {
+            snapshot = get(map, key);
+        } while (!replace(map, key, snapshot, snapshot.remove(serviceState)));
+    }
+
+    static void reposition(ConcurrentMap<String, ServiceSnapshot> map, String key, ServiceState<?> serviceState) {
+        ServiceSnapshot snapshot;
+        do {
+            snapshot = get(map, key);
+        } while (!replace(map, key, snapshot, snapshot.reposition(serviceState)));
+    }
+
+    private static boolean replace(ConcurrentMap<String, ServiceSnapshot> map, String key, ServiceSnapshot expected, ServiceSnapshot update) {
+        if (expected == update)
+            return true;
+        if (expected.isEmpty())
+            return map.putIfAbsent(key, update) == null;
+        if (update.isEmpty())
+            return map.remove(key, expected);
+        return map.replace(key, expected, update);
+    }
+
+    private static ServiceState<?>[] insert(ServiceState<?>[] source, ServiceState<?> serviceState) {
+        Comparator<ServiceReference<?>> comparator = ServiceReferenceComparator.getInstance();
+
+        // The comparator returns 0 only for the same service id, which is not contained
+        int index = -(Arrays.binarySearch(source, serviceState, comparator) + 1);
+        ServiceState<?>[] array = new ServiceState<?>[source.length + 1];
+        System.arraycopy(source, 0, array, 0, index);
+        array[index] = serviceState;
+        System.arraycopy(source, index, array, index + 1, source.length - index);
+
+        // A concurrent ranking change of another service may have misguided the binary search
+        for (int i = 1; i < array.length; i++) {
+            if (comparator.compare(array[i - 1], array[i]) > 0) {
+                Arrays.sort(array, comparator);
+                break;
+            }
+        }
+        return array;
+    }
+
+    private static ServiceState<?>[] removeAt(ServiceState<?>[] source, int index) {
+        ServiceState<?>[] array = new ServiceState<?>[source.length - 1];
+        System.arraycopy(source, 0, array, 0, index);
+        System.arraycopy(source, index + 1, array, index, array.length - index);
+        return array;
+    }
+
+    private int indexOf(ServiceState<?> serviceState) {
+        for (int i = 0; i < serviceStates.length; i++) {
+            if (serviceStates[i] == serviceState)
+                return i;
+        }
+        return -1;
+    }
+}
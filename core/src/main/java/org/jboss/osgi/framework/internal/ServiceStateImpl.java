@@ -38,7 +38,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.jboss.osgi.framework.spi.ServiceManager;
 import org.jboss.osgi.framework.spi.ServiceState;
 import org.jboss.osgi.metadata.CaseInsensitiveDictionary;
 import org.jboss.osgi.resolver.XBundle;
@@ -63,7 +62,7 @@ import org.osgi.framework.ServiceRegistration;
 @SuppressWarnings("rawtypes")
 final class ServiceStateImpl<S> implements ServiceState<S> {
 
-    private final ServiceManager serviceManager;
+    private final ServiceManagerImpl serviceManager;
     private final XBundle ownerBundle;
     private final String[] classNames;
     private final long serviceId;
@@ -76,9 +75,10 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
     // The properties
     private CaseInsensitiveDictionary prevProperties;
     private CaseInsensitiveDictionary currProperties;
+    private volatile int serviceRanking;
 
     @SuppressWarnings("unchecked")
-    ServiceStateImpl(ServiceManager serviceManager, XBundle owner, long serviceId, String[] classNames, ValueProvider<S> valueProvider, Dictionary properties) {
+    ServiceStateImpl(ServiceManagerImpl serviceManager, XBundle owner, long serviceId, String[] classNames, ValueProvider<S> valueProvider, Dictionary properties) {
         assert serviceManager != null : "Null serviceManager";
         assert owner != null : "Null owner";
         assert classNames != null && classNames.length > 0 : "Null clazzes";
@@ -99,6 +99,7 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
         properties.put(Constants.SERVICE_ID, serviceId);
         properties.put(Constants.OBJECTCLASS, classNames);
         this.currProperties = new CaseInsensitiveDictionary(properties);
+        this.serviceRanking = getRankingProperty();
 
         // Create the {@link ServiceRegistration} and {@link ServiceReference}
         this.registration = new ServiceRegistrationWrapper(this);
@@ -236,6 +237,12 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
         properties.put(Constants.SERVICE_ID, currProperties.get(Constants.SERVICE_ID));
         properties.put(Constants.OBJECTCLASS, currProperties.get(Constants.OBJECTCLASS));
         currProperties = new CaseInsensitiveDictionary(properties);
+        serviceManager.updateServiceProperties(this, getPreviousProperties());
+
+        // Reposition the service in the ranking ordered registry
+        int ranking = getRankingProperty();
+        if (ranking != serviceRanking)
+            serviceManager.updateServiceRanking(this, ranking);
 
         // This event is synchronously delivered after the service properties have been modified.
         serviceManager.fireServiceEvent(ownerBundle, ServiceEvent.MODIFIED, this);
@@ -317,6 +324,10 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
         if (bundleState == Bundle.UNINSTALLED)
             return false;
 
+        // The verdict must be computed against the generation that was current before the class loaders were obtained
+        ServiceAssignabilityCache assignabilityCache = serviceManager.getAssignabilityCache();
+        long generation = assignabilityCache.getGeneration();
+
         XBundleRevision bundleRev = ((XBundle) bundle).getBundleRevision();
         ClassLoader bundleClassLoader = bundleRev.getModuleClassLoader();
         if (bundleClassLoader == null) {
@@ -324,6 +335,24 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
             return false;
         }
 
+        XBundleRevision ownerRev = ownerBundle.getBundleRevision();
+        ClassLoader ownerClassLoader = ownerRev.getModuleClassLoader();
+        if (ownerClassLoader == null) {
+            LOGGER.tracef("Registrant bundle [%s] has no class loader for: %s", ownerBundle, className);
+            return true;
+        }
+
+        Boolean cached = assignabilityCache.getVerdict(bundleRev, ownerRev, className);
+        if (cached != null)
+            return cached.booleanValue();
+
+        boolean verdict = isAssignableInternal(bundle, bundleRev, bundleClassLoader, ownerClassLoader, className);
+        assignabilityCache.putVerdict(bundleRev, ownerRev, className, verdict, generation);
+        return verdict;
+    }
+
+    private boolean isAssignableInternal(Bundle bundle, XBundleRevision bundleRev, ClassLoader bundleClassLoader, ClassLoader ownerClassLoader, String className) {
+
         FallbackLoader fallbackLoader = null;
         if (bundleRev instanceof HostBundleRevision) {
             fallbackLoader = ((HostBundleRevision) bundleRev).getFallbackLoader();
@@ -350,13 +379,6 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
             return true;
         }
 
-        XBundleRevision ownerRev = ownerBundle.getBundleRevision();
-        ClassLoader ownerClassLoader = ownerRev.getModuleClassLoader();
-        if (ownerClassLoader == null) {
-            LOGGER.tracef("Registrant bundle [%s] has no class loader for: %s", ownerBundle, className);
-            return true;
-        }
-
         // For the bundle that registered the service referenced by this ServiceReference (registrant bundle);
         // find the source for the package. If no source is found then return true if the registrant bundle
         // is equal to the specified bundle; otherwise return false
@@ -389,6 +411,14 @@ final class ServiceStateImpl<S> implements ServiceState<S> {
 
     @Override
     public int getServiceRanking() {
+        return serviceRanking;
+    }
+
+    void setServiceRanking(int ranking) {
+        serviceRanking = ranking;
+    }
+
+    private int getRankingProperty() {
         Object prop = getProperty(Constants.SERVICE_RANKING);
         if (prop instanceof Integer == false)
             return 0;
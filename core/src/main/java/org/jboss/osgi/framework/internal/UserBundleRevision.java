@@ -25,6 +25,7 @@ import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.InternalConstants.MODULE_KEY;
 import static org.jboss.osgi.framework.spi.IntegrationConstants.BUNDLE_REVISION_KEY;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -35,6 +36,7 @@ import java.util.List;
 import org.jboss.modules.Module;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.spi.IntegrationConstants;
 import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.metadata.OSGiMetaData;
@@ -152,7 +154,8 @@ abstract class UserBundleRevision extends BundleStateRevision {
         assert rootFile != null : "Null rootFile";
 
         long bundleId = storageState.getBundleId();
-        RevisionContent rootContent = new RevisionContent(this, metadata, bundleId, 0, rootFile);
+        MappedJarFile mappedJar = getMappedJarFile(storageState);
+        RevisionContent rootContent = new RevisionContent(this, metadata, bundleId, 0, rootFile, mappedJar);
 
         // Setup single root file list, if there is no Bundle-ClassPath
         if (metadata.getBundleClassPath() == null) {
@@ -179,4 +182,30 @@ abstract class UserBundleRevision extends BundleStateRevision {
         }
         return rootContent;
     }
+
+    /**
+     * Map the stored bundle file if mapped content is enabled.
+     *
+     * @return The mapped file or null if the content is served by the VFS
+     */
+    private MappedJarFile getMappedJarFile(StorageState storageState) {
+        Object value = getBundleManager().getProperty(Constants.PROPERTY_MAPPED_CONTENT);
+        if (value == null || !Boolean.parseBoolean(String.valueOf(value)))
+            return null;
+
+        String bundleFile = storageState.getProperties().getProperty(StorageState.PROPERTY_BUNDLE_FILE);
+        if (storageState.getStorageDir() == null || bundleFile == null)
+            return null;
+
+        File file = new File(storageState.getStorageDir(), bundleFile);
+        try {
+            MappedJarFile mappedJar = file.isFile() ? MappedJarFile.open(file) : null;
+            if (mappedJar == null)
+                LOGGER.debugf("Cannot map bundle file, using VFS: %s", file);
+            return mappedJar;
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot map bundle file, using VFS: %s", file);
+            return null;
+        }
+    }
 }
@@ -29,12 +29,14 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jboss.osgi.framework.spi.ServiceManager;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
@@ -51,7 +53,10 @@ import org.osgi.framework.wiring.BundleWiring;
 class WeavingContext {
 
     private static final ThreadLocal<WeavingContext> contextAssociation = new ThreadLocal<WeavingContext>();
-    private static final Set<ServiceReference<WeavingHook>> blacklist = new HashSet<ServiceReference<WeavingHook>>();
+    private static final Set<ServiceReference<WeavingHook>> blacklist = Collections.newSetFromMap(new ConcurrentHashMap<ServiceReference<WeavingHook>, Boolean>());
+    private static final HookRegistration[] NO_HOOKS = new HookRegistration[0];
+    private static final AtomicInteger blacklistVersion = new AtomicInteger();
+    private static volatile HookSnapshot hookSnapshot;
 
     private final UserBundleState hostState;
     private final List<HookRegistration> weavingHooks;
@@ -62,25 +67,47 @@ class WeavingContext {
         return contextAssociation.get();
     }
 
+    /**
+     * Create a context and associate it with the current thread.
+     *
+     * @return The context or null if there is no {@link WeavingHook} registered
+     */
     static WeavingContext create(UserBundleState hostState) {
-        WeavingContext context = new WeavingContext(hostState);
+        HookRegistration[] hooks = getWeavingHooks(hostState.getBundleManager());
+        if (hooks.length == 0)
+            return null;
+
+        WeavingContext context = new WeavingContext(hostState, hooks);
         contextAssociation.set(context);
         return context;
     }
 
-    private WeavingContext(UserBundleState hostState) {
+    private WeavingContext(UserBundleState hostState, HookRegistration[] hooks) {
         this.hostState = hostState;
+        this.weavingHooks = new ArrayList<HookRegistration>(Arrays.asList(hooks));
+    }
 
-        BundleManagerPlugin bundleManager = hostState.getBundleManager();
+    // The ordered hooks are reused until a hook service changes or a hook gets blacklisted
+    private static HookRegistration[] getWeavingHooks(BundleManagerPlugin bundleManager) {
         BundleContext syscontext = bundleManager.getSystemContext();
+        ServiceManager serviceManager = bundleManager.getFrameworkState().getServiceManagerPlugin();
+        if (!(serviceManager instanceof ServiceManagerImpl))
+            return lookupWeavingHooks(syscontext);
+
+        ServiceHookCache hookCache = ((ServiceManagerImpl) serviceManager).getHookCache();
+        long generation = hookCache.getGeneration();
+        int version = blacklistVersion.get();
+        HookSnapshot snapshot = hookSnapshot;
+        if (snapshot != null && snapshot.hookCache == hookCache && snapshot.generation == generation && snapshot.blacklistVersion == version)
+            return snapshot.hooks;
+
+        // A hook that gets blacklisted during the lookup bumps the version, so that this snapshot is not reused
+        HookRegistration[] hooks = lookupWeavingHooks(syscontext);
+        hookSnapshot = new HookSnapshot(hookCache, generation, version, hooks);
+        return hooks;
+    }
 
-        // Cleanup the blacklist
-        for (Iterator<ServiceReference<WeavingHook>> iterator = blacklist.iterator(); iterator.hasNext();) {
-            ServiceReference<WeavingHook> sref = iterator.next();
-            if (syscontext.getService(sref) == null) {
-                iterator.remove();
-            }
-        }
+    private static HookRegistration[] lookupWeavingHooks(BundleContext syscontext) {
 
         // Find the registered {@link WeavingHook}
         Collection<ServiceReference<WeavingHook>> srefs = null;
@@ -89,19 +116,32 @@ class WeavingContext {
         } catch (InvalidSyntaxException e) {
             // ignore
         }
+        if (srefs == null || srefs.isEmpty())
+            return NO_HOOKS;
+
+        // Cleanup the blacklist
+        for (Iterator<ServiceReference<WeavingHook>> iterator = blacklist.iterator(); iterator.hasNext();) {
+            ServiceReference<WeavingHook> sref = iterator.next();
+            if (syscontext.getService(sref) == null) {
+                iterator.remove();
+            }
+        }
 
         // Weaving Hook services that are lower in ranking will weave any of the changes of higher ranking Weaving Hook services.
         List<ServiceReference<WeavingHook>> sorted = new ArrayList<ServiceReference<WeavingHook>>(srefs);
         Collections.reverse(sorted);
 
-        // Get the hook instances and associate them with the current thread
-        weavingHooks = new ArrayList<HookRegistration>();
+        // Get the hook instances
+        List<HookRegistration> hooks = new ArrayList<HookRegistration>();
         for (ServiceReference<WeavingHook> sref : sorted) {
             if (blacklist.contains(sref) == false) {
                 WeavingHook hook = syscontext.getService(sref);
-                weavingHooks.add(new HookRegistration(sref, hook));
+                if (hook != null) {
+                    hooks.add(new HookRegistration(sref, hook));
+                }
             }
         }
+        return hooks.toArray(new HookRegistration[hooks.size()]);
     }
 
     List<HookRegistration> getWeavingHooks() {
@@ -110,6 +150,7 @@ class WeavingContext {
 
     void blacklist(ServiceReference<WeavingHook> sref) {
         blacklist.add(sref);
+        blacklistVersion.incrementAndGet();
     }
 
     synchronized ContextClass createContextClass(String className, Class<?> redefinedClass, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
@@ -126,6 +167,19 @@ class WeavingContext {
         contextAssociation.remove();
     }
 
+    private static final class HookSnapshot {
+        final ServiceHookCache hookCache;
+        final long generation;
+        final int blacklistVersion;
+        final HookRegistration[] hooks;
+        HookSnapshot(ServiceHookCache hookCache, long generation, int blacklistVersion, HookRegistration[] hooks) {
+            this.hookCache = hookCache;
+            this.generation = generation;
+            this.blacklistVersion = blacklistVersion;
+            this.hooks = hooks;
+        }
+    }
+
     static class HookRegistration {
         final WeavingHook hook;
         final ServiceReference<WeavingHook> sref;
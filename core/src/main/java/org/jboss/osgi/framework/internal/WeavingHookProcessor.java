@@ -26,13 +26,19 @@ import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.internal.WeavingContext.ContextClass;
 import org.jboss.osgi.framework.internal.WeavingContext.HookRegistration;
+import org.jboss.osgi.framework.internal.WovenClassCache.CachedClass;
 import org.jboss.osgi.framework.spi.BundleReferenceClassLoader;
 import org.jboss.osgi.framework.spi.FrameworkEvents;
+import org.jboss.osgi.framework.spi.StorageState;
 import org.jboss.osgi.metadata.OSGiMetaData;
 import org.jboss.osgi.metadata.OSGiMetaDataBuilder;
 import org.jboss.osgi.resolver.XBundleRevisionBuilder;
@@ -56,12 +62,29 @@ final class WeavingHookProcessor implements ClassFileTransformer {
 
     private final FrameworkEvents frameworkEvents;
     private final HostBundleRevision hostRev;
+    private final WovenClassCache wovenClassCache;
 
-    private List<String> processedImports = new ArrayList<String>();
+    // The dynamic package requirements parsed from each processed weaving import spec
+    private final ConcurrentMap<String, List<XPackageRequirement>> weavingRequirements = new ConcurrentHashMap<String, List<XPackageRequirement>>();
 
     WeavingHookProcessor(HostBundleRevision hostRev, FrameworkEvents frameworkEvents) {
         this.frameworkEvents = frameworkEvents;
         this.hostRev = hostRev;
+        this.wovenClassCache = createWovenClassCache(hostRev);
+    }
+
+    private static WovenClassCache createWovenClassCache(HostBundleRevision hostRev) {
+        BundleManagerPlugin bundleManager = hostRev.getBundleState().getBundleManager();
+        Object value = bundleManager.getProperty(Constants.PROPERTY_WEAVING_CACHE);
+        if (value == null || !Boolean.parseBoolean(String.valueOf(value)))
+            return null;
+
+        StorageState storageState = hostRev.getStorageState();
+        if (storageState == null || storageState.getStorageDir() == null)
+            return null;
+
+        String revisionKey = storageState.getLocation() + "#" + storageState.getBundleId() + "." + storageState.getRevisionId();
+        return new WovenClassCache(storageState.getStorageDir(), revisionKey);
     }
 
     @Override
@@ -73,6 +96,25 @@ final class WeavingHookProcessor implements ClassFileTransformer {
         }
 
         ContextClass wovenClass = context.createContextClass(className, classBeingRedefined, protectionDomain, classfileBuffer);
+
+        // Replay a previous weaving of the same class bytes by the same hooks
+        String cacheKey = null;
+        if (wovenClassCache != null) {
+            List<String> hookIdentities = new ArrayList<String>();
+            for (HookRegistration hookreg : context.getWeavingHooks()) {
+                hookIdentities.add(WovenClassCache.getHookIdentity(hookreg));
+            }
+            cacheKey = wovenClassCache.getKey(className, classfileBuffer, hookIdentities);
+            CachedClass cached = wovenClassCache.get(cacheKey);
+            if (cached != null) {
+                wovenClass.setBytes(cached.wovenBytes);
+                wovenClass.getDynamicImports().addAll(cached.dynamicImports);
+                addDynamicWeavingImports(wovenClass);
+                return wovenClass.getBytes();
+            }
+        }
+
+        int importCount = wovenClass.getDynamicImports().size();
         for (Iterator<HookRegistration> iterator = context.getWeavingHooks().iterator(); iterator.hasNext();) {
             HookRegistration hookreg = iterator.next();
             WeavingHook hook = hookreg.hook;
@@ -94,40 +136,55 @@ final class WeavingHookProcessor implements ClassFileTransformer {
 
         addDynamicWeavingImports(wovenClass);
 
+        if (cacheKey != null) {
+            List<String> dynamicImports = wovenClass.getDynamicImports();
+            List<String> addedImports = new ArrayList<String>(dynamicImports.subList(importCount, dynamicImports.size()));
+            wovenClassCache.put(cacheKey, wovenClass.getBytes(), addedImports);
+        }
+
         return wovenClass.getBytes();
     }
 
     private void addDynamicWeavingImports(ContextClass wovenClass) {
-
-        // Get the list of unprocessed imports
-        List<String> unprocessedImports = new ArrayList<String>();
         for (String importSpec : wovenClass.getDynamicImports()) {
-            if (!processedImports.contains(importSpec)) {
-                unprocessedImports.add(importSpec);
-                processedImports.add(importSpec);
+            if (weavingRequirements.containsKey(importSpec))
+                continue;
+
+            // The spec only becomes visible after its requirements were added to the fallback loader,
+            // so a thread that finds it can rely on the dynamic import
+            synchronized (weavingRequirements) {
+                if (weavingRequirements.containsKey(importSpec))
+                    continue;
+
+                List<XPackageRequirement> reqs = parseDynamicImport(importSpec);
+                FallbackLoader fallbackLoader = hostRev.getFallbackLoader();
+                for (XPackageRequirement req : reqs) {
+                    fallbackLoader.addDynamicWeavingImport(req);
+                }
+                weavingRequirements.put(importSpec, reqs);
             }
         }
+    }
 
-        // Build the dynamic weaving package requirements
-        for (String importSpec : unprocessedImports) {
-            try {
-                OSGiMetaDataBuilder mdbuilder = OSGiMetaDataBuilder.createBuilder(hostRev.getSymbolicName(), hostRev.getVersion());
-                mdbuilder.addDynamicImportPackages(importSpec);
-                OSGiMetaData metadata = mdbuilder.getOSGiMetaData();
+    private List<XPackageRequirement> parseDynamicImport(String importSpec) {
+        try {
+            OSGiMetaDataBuilder mdbuilder = OSGiMetaDataBuilder.createBuilder(hostRev.getSymbolicName(), hostRev.getVersion());
+            mdbuilder.addDynamicImportPackages(importSpec);
+            OSGiMetaData metadata = mdbuilder.getOSGiMetaData();
 
-                XBundleRevisionBuilder resbuilder = XBundleRevisionBuilderFactory.create();
-                XResource res = resbuilder.loadFrom(metadata).getResource();
+            XBundleRevisionBuilder resbuilder = XBundleRevisionBuilderFactory.create();
+            XResource res = resbuilder.loadFrom(metadata).getResource();
 
-                // Extract the dynamic package requirements
-                for (Requirement req : res.getRequirements(PackageNamespace.PACKAGE_NAMESPACE)) {
-                    FallbackLoader fallbackLoader = hostRev.getFallbackLoader();
-                    fallbackLoader.addDynamicWeavingImport((XPackageRequirement) req);
-                }
-            } catch(RuntimeException rte) {
-                // The dynamic imports must have a valid syntax,
-                // otherwise an Illegal Argument Exception must be thrown.
-                throw MESSAGES.illegalArgumentDynamicWeavingImport(rte, importSpec);
+            // Extract the dynamic package requirements
+            List<XPackageRequirement> result = new ArrayList<XPackageRequirement>();
+            for (Requirement req : res.getRequirements(PackageNamespace.PACKAGE_NAMESPACE)) {
+                result.add((XPackageRequirement) req);
             }
+            return Collections.unmodifiableList(result);
+        } catch(RuntimeException rte) {
+            // The dynamic imports must have a valid syntax,
+            // otherwise an Illegal Argument Exception must be thrown.
+            throw MESSAGES.illegalArgumentDynamicWeavingImport(rte, importSpec);
         }
     }
 }
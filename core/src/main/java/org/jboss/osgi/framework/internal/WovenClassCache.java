@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.jboss.osgi.framework.internal;
+
+import static org.jboss.osgi.framework.FrameworkLogger.LOGGER;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.framework.internal.WeavingContext.HookRegistration;
+import org.osgi.framework.Bundle;
+
+/**
+ * A persistent cache of woven class bytes for a bundle revision.
+ *
+ * An entry is keyed by the class name, a hash of the original class bytes, the bundle revision
+ * and the identity and version of the participating weaving hooks. It holds the woven bytes and the
+ * dynamic imports that the hooks added. Any change in the key causes a miss, which falls back to live weaving.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+final class WovenClassCache {
+
+    static final String CACHE_DIR = "woven-classes";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File cacheDir;
+    private final String revisionKey;
+
+    WovenClassCache(File storageDir, String revisionKey) {
+        this.cacheDir = new File(storageDir, CACHE_DIR);
+        this.revisionKey = revisionKey;
+    }
+
+    /**
+     * Get the identity and version of a weaving hook
+     */
+    static String getHookIdentity(HookRegistration hookreg) {
+        Bundle bundle = hookreg.sref.getBundle();
+        String owner = bundle != null ? bundle.getSymbolicName() + ":" + bundle.getVersion() : null;
+        return hookreg.hook.getClass().getName() + "@" + owner;
+    }
+
+    String getKey(String className, byte[] classBytes, List<String> hookIdentities) {
+        MessageDigest digest = DigestHelper.newDigest();
+        DigestHelper.update(digest, revisionKey);
+        DigestHelper.update(digest, className);
+        for (String hookIdentity : hookIdentities) {
+            DigestHelper.update(digest, hookIdentity);
+        }
+        digest.update(DigestHelper.newDigest().digest(classBytes));
+        return DigestHelper.toHex(digest.digest());
+    }
+
+    /**
+     * Get the cached entry for the given key. A missing or unreadable entry is a miss.
+     */
+    CachedClass get(String key) {
+        File cacheFile = new File(cacheDir, key);
+        if (!cacheFile.isFile())
+            return null;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (input.readInt() != FORMAT_VERSION)
+                    return null;
+                int imports = input.readInt();
+                List<String> dynamicImports = new ArrayList<String>(imports);
+                for (int i = 0; i < imports; i++) {
+                    dynamicImports.add(input.readUTF());
+                }
+                byte[] wovenBytes = new byte[input.readInt()];
+                input.readFully(wovenBytes);
+                return new CachedClass(wovenBytes, dynamicImports);
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot read woven class cache: %s", cacheFile);
+            return null;
+        }
+    }
+
+    /**
+     * Store the result of a successful weaving
+     */
+    void put(String key, byte[] wovenBytes, List<String> dynamicImports) {
+        File cacheFile = new File(cacheDir, key);
+        File tmpFile = null;
+        try {
+            cacheDir.mkdirs();
+            tmpFile = File.createTempFile(key, ".tmp", cacheDir);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(dynamicImports.size());
+                for (String importSpec : dynamicImports) {
+                    output.writeUTF(importSpec);
+                }
+                output.writeInt(wovenBytes.length);
+                output.write(wovenBytes);
+            } finally {
+                output.close();
+            }
+            // Concurrent loads of the same class write the same content
+            cacheFile.delete();
+            if (!tmpFile.renameTo(cacheFile)) {
+                tmpFile.delete();
+            }
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot write woven class cache: %s", cacheFile);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    static final class CachedClass {
+
+        final byte[] wovenBytes;
+        final List<String> dynamicImports;
+
+        CachedClass(byte[] wovenBytes, List<String> dynamicImports) {
+            this.wovenBytes = wovenBytes;
+            this.dynamicImports = Collections.unmodifiableList(dynamicImports);
+        }
+    }
+}
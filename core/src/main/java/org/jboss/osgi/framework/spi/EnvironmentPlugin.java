@@ -25,8 +25,8 @@ import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.StartContext;
 import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.internal.IndexedEnvironment;
 import org.jboss.osgi.resolver.XEnvironment;
-import org.jboss.osgi.resolver.spi.AbstractEnvironment;
 
 /**
  * The default {@link XEnvironment} plugin.
@@ -47,6 +47,6 @@ public class EnvironmentPlugin extends AbstractIntegrationService<XEnvironment>
 
     @Override
     protected XEnvironment createServiceValue(StartContext startContext) {
-        return new AbstractEnvironment();
+        return new IndexedEnvironment();
     }
 }
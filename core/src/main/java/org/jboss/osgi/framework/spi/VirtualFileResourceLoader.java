@@ -24,7 +24,6 @@ package org.jboss.osgi.framework.spi;
 
 import static org.jboss.osgi.framework.FrameworkMessages.MESSAGES;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +31,7 @@ import java.net.URL;
 import java.security.CodeSigner;
 import java.security.CodeSource;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -58,6 +58,8 @@ import org.jboss.osgi.vfs.VirtualFile;
  */
 public final class VirtualFileResourceLoader implements IterableResourceLoader {
 
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
     private final VirtualFile virtualFile;
     private final Set<String> localPaths;
 
@@ -82,9 +84,7 @@ public final class VirtualFileResourceLoader implements IterableResourceLoader {
         ClassSpec classSpec = new ClassSpec();
         InputStream is = child.openStream();
         try {
-            ByteArrayOutputStream os = new ByteArrayOutputStream(1024);
-            VFSUtils.copyStream(is, os);
-            classSpec.setBytes(os.toByteArray());
+            classSpec.setBytes(readClassBytes(is));
         } finally {
             safeClose(is);
         }
@@ -95,14 +95,51 @@ public final class VirtualFileResourceLoader implements IterableResourceLoader {
         return classSpec;
     }
 
+    /**
+     * Read the class bytes into an array that is sized by the number of bytes the stream reports as available.
+     * Zip entry and file streams report the remaining entry size, so the bytes are copied once without growing the array.
+     */
+    private static byte[] readClassBytes(InputStream is) throws IOException {
+        int available = is.available();
+        byte[] buffer = new byte[available > 0 ? available : DEFAULT_BUFFER_SIZE];
+        int count = 0;
+        while (true) {
+            if (count == buffer.length) {
+                // Only grow the array if the stream has more data than reported
+                int next = is.read();
+                if (next < 0)
+                    break;
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, DEFAULT_BUFFER_SIZE));
+                buffer[count++] = (byte) next;
+            }
+            int read = is.read(buffer, count, buffer.length - count);
+            if (read < 0)
+                break;
+            count += read;
+        }
+        return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+    }
+
     @Override
     public PackageSpec getPackageSpec(String name) throws IOException {
-        PackageSpec spec = new PackageSpec();
         Manifest manifest = VFSUtils.getManifest(virtualFile);
+        return createPackageSpec(manifest, name, virtualFile.toURL());
+    }
+
+    /**
+     * Create the package spec for the given package from the manifest.
+     * Entry attributes take precedence over the main attributes.
+     *
+     * @param manifest The manifest, which may be null
+     * @param name The package name
+     * @param sealBase The URL that is used if the package is sealed
+     */
+    public static PackageSpec createPackageSpec(Manifest manifest, String name, URL sealBase) {
+        PackageSpec spec = new PackageSpec();
         if (manifest == null) {
             return spec;
         }
-        Attributes mainAttribute = manifest.getAttributes(name);
+        Attributes mainAttribute = manifest.getMainAttributes();
         Attributes entryAttribute = manifest.getAttributes(name);
         spec.setSpecTitle(getDefinedAttribute(Attributes.Name.SPECIFICATION_TITLE, entryAttribute, mainAttribute));
         spec.setSpecVersion(getDefinedAttribute(Attributes.Name.SPECIFICATION_VERSION, entryAttribute, mainAttribute));
@@ -111,7 +148,7 @@ public final class VirtualFileResourceLoader implements IterableResourceLoader {
         spec.setImplVersion(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_VERSION, entryAttribute, mainAttribute));
         spec.setImplVendor(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_VENDOR, entryAttribute, mainAttribute));
         if (Boolean.parseBoolean(getDefinedAttribute(Attributes.Name.SEALED, entryAttribute, mainAttribute))) {
-            spec.setSealBase(virtualFile.toURL());
+            spec.setSealBase(sealBase);
         }
         return spec;
     }
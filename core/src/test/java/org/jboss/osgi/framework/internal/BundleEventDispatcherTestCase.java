@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.framework.internal.FrameworkEventsImpl.BundleListenerRegistration;
+import org.jboss.osgi.framework.spi.FrameworkEvents;
+import org.jboss.osgi.resolver.XBundle;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+
+/**
+ * Test the per listener delivery of asynchronous bundle events.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class BundleEventDispatcherTestCase {
+
+    @Test
+    public void testOrderedDelivery() throws Exception {
+        ExecutorService executor = BundleEventDispatcher.createExecutorService(4);
+        try {
+            BundleEventDispatcher dispatcher = new BundleEventDispatcher(executor, new EventListenerStatisticsImpl(mock(FrameworkEvents.class), 0, 0));
+            final int count = 500;
+            final CountDownLatch latch = new CountDownLatch(count);
+            final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+            BundleListener listener = new BundleListener() {
+                @Override
+                public void bundleChanged(BundleEvent event) {
+                    received.add(event.getType());
+                    latch.countDown();
+                }
+            };
+            BundleListenerRegistration registration = new BundleListenerRegistration(mock(XBundle.class), listener);
+            dispatcher.addListener(registration);
+            Bundle bundle = mock(Bundle.class);
+            for (int i = 0; i < count; i++) {
+                dispatcher.deliver(registration, new BundleEvent(i, bundle));
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < count; i++) {
+                assertEquals(Integer.valueOf(i), received.get(i));
+            }
+            assertEquals(count, dispatcher.getDeliveredEvents());
+            assertEquals(0, dispatcher.getPendingEvents());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockOthers() throws Exception {
+        ExecutorService executor = BundleEventDispatcher.createExecutorService(2);
+        try {
+            BundleEventDispatcher dispatcher = new BundleEventDispatcher(executor, new EventListenerStatisticsImpl(mock(FrameworkEvents.class), 0, 0));
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch fastDone = new CountDownLatch(1);
+            BundleListener slow = new BundleListener() {
+                @Override
+                public void bundleChanged(BundleEvent event) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            BundleListener fast = new BundleListener() {
+                @Override
+                public void bundleChanged(BundleEvent event) {
+                    fastDone.countDown();
+                }
+            };
+            Bundle bundle = mock(Bundle.class);
+            BundleListenerRegistration slowReg = new BundleListenerRegistration(mock(XBundle.class), slow);
+            BundleListenerRegistration fastReg = new BundleListenerRegistration(mock(XBundle.class), fast);
+            dispatcher.addListener(slowReg);
+            dispatcher.addListener(fastReg);
+            dispatcher.deliver(slowReg, new BundleEvent(BundleEvent.INSTALLED, bundle));
+            dispatcher.deliver(slowReg, new BundleEvent(BundleEvent.RESOLVED, bundle));
+            dispatcher.deliver(slowReg, new BundleEvent(BundleEvent.STARTED, bundle));
+            dispatcher.deliver(fastReg, new BundleEvent(BundleEvent.INSTALLED, bundle));
+            assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+            assertTrue(dispatcher.getPeakPendingEvents() >= 2);
+            release.countDown();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRemovedListener() throws Exception {
+        ExecutorService executor = BundleEventDispatcher.createExecutorService(1);
+        try {
+            BundleEventDispatcher dispatcher = new BundleEventDispatcher(executor, new EventListenerStatisticsImpl(mock(FrameworkEvents.class), 0, 0));
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+            BundleListener listener = new BundleListener() {
+                @Override
+                public void bundleChanged(BundleEvent event) {
+                    received.add(event.getType());
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            Bundle bundle = mock(Bundle.class);
+            BundleListenerRegistration registration = new BundleListenerRegistration(mock(XBundle.class), listener);
+            dispatcher.addListener(registration);
+            dispatcher.deliver(registration, new BundleEvent(BundleEvent.INSTALLED, bundle));
+            dispatcher.deliver(registration, new BundleEvent(BundleEvent.RESOLVED, bundle));
+
+            // Queued events are dropped and no mailbox is recreated after the removal
+            dispatcher.removeListener(registration);
+            dispatcher.deliver(registration, new BundleEvent(BundleEvent.STARTED, bundle));
+            assertTrue(dispatcher.getQueueDepths().isEmpty());
+            release.countDown();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(received.size() <= 1);
+            assertEquals(0, dispatcher.getPendingEvents());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+/**
+ * Test the bundle location, symbolic name and state index.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class BundleIndexTestCase {
+
+    @Test
+    public void testLocationIndex() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundleRevision brev = mockRevision(1, "bundleA", "1.0.0", "locA", Bundle.INSTALLED);
+        index.addRevision(brev);
+        assertSame(brev.getBundle(), index.getBundleByLocation("locA"));
+        assertNull(index.getBundleByLocation("locB"));
+
+        index.removeRevision(brev);
+        assertNull(index.getBundleByLocation("locA"));
+        assertTrue(index.getBundles(null).isEmpty());
+    }
+
+    @Test
+    public void testSymbolicNameIndex() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundleRevision brev1 = mockRevision(1, "bundleA", "1.0.0", "locA1", Bundle.INSTALLED);
+        XBundleRevision brev2 = mockRevision(2, "bundleA", "2.0.0", "locA2", Bundle.INSTALLED);
+        XBundleRevision brev3 = mockRevision(3, "bundleB", "1.0.0", "locB", Bundle.INSTALLED);
+        index.addRevision(brev1);
+        index.addRevision(brev3);
+        index.addRevision(brev2);
+
+        Set<XBundle> bundles = index.getBundles("bundleA", null);
+        assertEquals(2, bundles.size());
+        Iterator<XBundle> itbundle = bundles.iterator();
+        assertSame(brev2.getBundle(), itbundle.next());
+        assertSame(brev1.getBundle(), itbundle.next());
+
+        bundles = index.getBundles("bundleA", new VersionRange("[1.0,2.0)"));
+        assertEquals(1, bundles.size());
+        assertSame(brev1.getBundle(), bundles.iterator().next());
+
+        assertEquals(3, index.getBundles(null, null).size());
+        assertTrue(index.getBundles("bundleC", null).isEmpty());
+
+        index.removeRevision(brev2);
+        assertEquals(1, index.getBundles("bundleA", null).size());
+    }
+
+    @Test
+    public void testBundleSymbolicName() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundleRevision brev = mockRevision(1, "bundleA", "1.0.0", "locA", Bundle.INSTALLED);
+        when(brev.getSymbolicName()).thenReturn(null);
+
+        // A revision without a symbolic name is indexed by the name of its bundle
+        index.addRevision(brev);
+        assertSame(brev.getBundle(), index.getBundles("bundleA", null).iterator().next());
+
+        index.removeRevision(brev);
+        assertTrue(index.getBundles("bundleA", null).isEmpty());
+    }
+
+    @Test
+    public void testUnnamedBundle() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundleRevision brev1 = mockRevision(1, null, "1.0.0", "locA", Bundle.INSTALLED);
+        XBundleRevision brev2 = mockRevision(2, "bundleB", "1.0.0", "locB", Bundle.INSTALLED);
+        index.addRevision(brev1);
+        index.addRevision(brev2);
+
+        // A bundle without a symbolic name is only found when no name is given
+        Set<XBundle> bundles = index.getBundles(null, null);
+        assertEquals(2, bundles.size());
+        assertTrue(bundles.contains(brev1.getBundle()));
+        assertEquals(2, index.getBundles(null, new VersionRange("[1.0,2.0)")).size());
+        assertTrue(index.getBundles(null, new VersionRange("[2.0,3.0)")).isEmpty());
+
+        index.removeRevision(brev1);
+        bundles = index.getBundles(null, null);
+        assertEquals(1, bundles.size());
+        assertSame(brev2.getBundle(), bundles.iterator().next());
+    }
+
+    @Test
+    public void testStateIndex() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundleRevision brev = mockRevision(1, "bundleA", "1.0.0", "locA", Bundle.INSTALLED);
+        XBundle bundle = brev.getBundle();
+        index.addRevision(brev);
+        assertEquals(1, index.getBundles(Bundle.INSTALLED).size());
+        assertTrue(index.getBundles(Bundle.RESOLVED | Bundle.ACTIVE).isEmpty());
+
+        when(bundle.getState()).thenReturn(Bundle.RESOLVED);
+        index.stateChanged(bundle);
+        assertTrue(index.getBundles(Bundle.INSTALLED).isEmpty());
+        assertEquals(1, index.getBundles(Bundle.RESOLVED | Bundle.ACTIVE).size());
+    }
+
+    @Test
+    public void testGeneration() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundleRevision brev = mockRevision(1, "bundleA", "1.0.0", "locA", Bundle.INSTALLED);
+        XBundle bundle = brev.getBundle();
+        long generation = index.getGeneration();
+        index.addRevision(brev);
+        assertTrue(index.getGeneration() > generation);
+
+        generation = index.getGeneration();
+        when(bundle.getState()).thenReturn(Bundle.RESOLVED);
+        index.stateChanged(bundle);
+        assertTrue(index.getGeneration() > generation);
+
+        // Starting a bundle does not change the available providers
+        generation = index.getGeneration();
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        index.stateChanged(bundle);
+        assertEquals(generation, index.getGeneration());
+
+        index.removeRevision(brev);
+        assertTrue(index.getGeneration() > generation);
+    }
+
+    @Test
+    public void testUntrackedBundleState() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundle bundle = mock(XBundle.class);
+        when(bundle.getState()).thenReturn(Bundle.RESOLVED);
+        XBundleRevision brev = mock(XBundleRevision.class);
+        when(brev.getBundle()).thenReturn(bundle);
+        when(brev.getSymbolicName()).thenReturn("moduleA");
+        index.addRevision(brev);
+        assertEquals(1, index.getBundles(Bundle.RESOLVED).size());
+
+        // State changes of foreign bundles are not reported
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        assertTrue(index.getBundles(Bundle.RESOLVED).isEmpty());
+        assertEquals(1, index.getBundles(Bundle.ACTIVE).size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private XBundleRevision mockRevision(long bundleId, String symbolicName, String version, String location, int state) {
+        AbstractBundleState<BundleStateRevision> bundle = mock(AbstractBundleState.class);
+        when(bundle.getBundleId()).thenReturn(bundleId);
+        when(bundle.getSymbolicName()).thenReturn(symbolicName);
+        when(bundle.getVersion()).thenReturn(Version.parseVersion(version));
+        when(bundle.getLocation()).thenReturn(location);
+        when(bundle.getState()).thenReturn(state);
+        XBundleRevision brev = mock(XBundleRevision.class);
+        when(brev.getBundle()).thenReturn(bundle);
+        when(brev.getSymbolicName()).thenReturn(symbolicName);
+        when(brev.getVersion()).thenReturn(Version.parseVersion(version));
+        return brev;
+    }
+}
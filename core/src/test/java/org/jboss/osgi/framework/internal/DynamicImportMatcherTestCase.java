@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.resolver.XPackageRequirement;
+import org.junit.Test;
+
+/**
+ * Test the DynamicImport-Package matcher.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class DynamicImportMatcherTestCase {
+
+    @Test
+    public void testPatternMatches() throws Exception {
+        XPackageRequirement reqA = mockRequirement("org.acme.*");
+        XPackageRequirement reqB = mockRequirement("org.acme.foo");
+        XPackageRequirement reqC = mockRequirement("org.jboss.*");
+        DynamicImportMatcher matcher = new DynamicImportMatcher(Collections.<String>emptyList(), Arrays.asList(reqA, reqB, reqC));
+
+        List<XPackageRequirement> matches = matcher.getMatchingRequirements("org/acme/foo");
+        assertEquals(2, matches.size());
+        assertSame(reqA, matches.get(0));
+        assertSame(reqB, matches.get(1));
+
+        matches = matcher.getMatchingRequirements("org/acme/bar");
+        assertEquals(1, matches.size());
+        assertSame(reqA, matches.get(0));
+
+        assertTrue(matcher.getMatchingRequirements("org/other").isEmpty());
+    }
+
+    @Test
+    public void testWildcardOrder() throws Exception {
+        XPackageRequirement reqA = mockRequirement("org.acme.*");
+        XPackageRequirement reqB = mockRequirement("*");
+        DynamicImportMatcher matcher = new DynamicImportMatcher(Collections.<String>emptyList(), Arrays.asList(reqA, reqB));
+
+        List<XPackageRequirement> matches = matcher.getMatchingRequirements("org/acme/foo");
+        assertEquals(2, matches.size());
+        assertSame(reqA, matches.get(0));
+        assertSame(reqB, matches.get(1));
+
+        matches = matcher.getMatchingRequirements("com/other");
+        assertEquals(1, matches.size());
+        assertSame(reqB, matches.get(0));
+    }
+
+    @Test
+    public void testExportedPackage() throws Exception {
+        XPackageRequirement reqA = mockRequirement("*");
+        DynamicImportMatcher matcher = new DynamicImportMatcher(Collections.singleton("org/acme"), Arrays.asList(reqA));
+        assertTrue(matcher.getMatchingRequirements("org/acme").isEmpty());
+        assertEquals(1, matcher.getMatchingRequirements("org/acme/foo").size());
+    }
+
+    @Test
+    public void testEmptyMatcher() throws Exception {
+        DynamicImportMatcher matcher = new DynamicImportMatcher(Collections.<String>emptyList(), Collections.<XPackageRequirement>emptyList());
+        assertTrue(matcher.isEmpty());
+        assertTrue(matcher.getMatchingRequirements("org/acme").isEmpty());
+    }
+
+    private XPackageRequirement mockRequirement(String pattern) {
+        XPackageRequirement req = mock(XPackageRequirement.class);
+        when(req.getPackageName()).thenReturn(pattern);
+        return req;
+    }
+}
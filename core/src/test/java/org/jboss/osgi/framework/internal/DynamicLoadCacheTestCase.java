@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the dynamic import decisions of the fallback loader.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class DynamicLoadCacheTestCase {
+
+    @Test
+    public void testProviderHit() throws Exception {
+        DynamicLoadCache<String> cache = new DynamicLoadCache<String>(10);
+        assertNull(cache.getProvider("org/acme", 1));
+        cache.putProvider("org/acme", "providerA", 1, 1);
+        assertEquals("providerA", cache.getProvider("org/acme", 1));
+        assertNull(cache.getProvider("org/foo", 1));
+    }
+
+    @Test
+    public void testMiss() throws Exception {
+        DynamicLoadCache<String> cache = new DynamicLoadCache<String>(2);
+        assertFalse(cache.isMiss("org/acme/Foo.class", 1));
+        cache.putMiss("org/acme/Foo.class", 1, 1);
+        assertTrue(cache.isMiss("org/acme/Foo.class", 1));
+        assertFalse(cache.isMiss("org/acme/Bar.class", 1));
+
+        // The misses are bounded
+        cache.putMiss("org/acme/Bar.class", 1, 1);
+        cache.putMiss("org/acme/Baz.class", 1, 1);
+        assertEquals(1, cache.size());
+        assertTrue(cache.isMiss("org/acme/Baz.class", 1));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        DynamicLoadCache<String> cache = new DynamicLoadCache<String>(10);
+        cache.putProvider("org/acme", "providerA", 1, 1);
+        cache.putMiss("org/foo/Foo.class", 1, 1);
+
+        // A new bundle generation drops all decisions
+        assertNull(cache.getProvider("org/acme", 2));
+        assertFalse(cache.isMiss("org/foo/Foo.class", 2));
+        assertEquals(0, cache.size());
+
+        // So does a change of the dynamic imports
+        cache.putProvider("org/acme", "providerA", 2, 2);
+        cache.clear();
+        assertNull(cache.getProvider("org/acme", 2));
+    }
+
+    @Test
+    public void testGenerationRace() throws Exception {
+        DynamicLoadCache<String> cache = new DynamicLoadCache<String>(10);
+
+        // Bundles changed while the decision was made
+        cache.putProvider("org/acme", "providerA", 1, 2);
+        cache.putMiss("org/foo/Foo.class", 1, 2);
+        assertNull(cache.getProvider("org/acme", 2));
+        assertFalse(cache.isMiss("org/foo/Foo.class", 2));
+
+        // Generations are not tracked
+        cache.putProvider("org/acme", "providerA", -1, -1);
+        assertNull(cache.getProvider("org/acme", -1));
+        assertEquals(0, cache.size());
+    }
+}
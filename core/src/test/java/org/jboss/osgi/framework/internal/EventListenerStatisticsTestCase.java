@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.framework.internal.EventListenerStatisticsImpl.ListenerStats;
+import org.jboss.osgi.framework.spi.FrameworkEvents;
+import org.jboss.osgi.resolver.XBundle;
+import org.junit.Test;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkEvent;
+
+/**
+ * Test the event listener call statistics.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class EventListenerStatisticsTestCase {
+
+    @Test
+    public void testEntryPerListenerClass() throws Exception {
+        EventListenerStatisticsImpl statistics = new EventListenerStatisticsImpl(mock(FrameworkEvents.class), 0, 0);
+        XBundle bundle = mockBundle(5);
+        BundleListener listener = mock(BundleListener.class);
+        ListenerStats stats = statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, bundle, listener);
+        assertSame(stats, statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, bundle, listener));
+        assertEquals(5, stats.getBundleId());
+        assertEquals("bundleA", stats.getSymbolicName());
+        assertEquals(1, statistics.getEntries().size());
+
+        ListenerStats other = statistics.getStats(EventListenerStatisticsImpl.SERVICE_LISTENER, null, listener);
+        assertEquals(-1, other.getBundleId());
+        assertEquals(2, statistics.getEntries().size());
+    }
+
+    @Test
+    public void testRemoveBundle() throws Exception {
+        EventListenerStatisticsImpl statistics = new EventListenerStatisticsImpl(mock(FrameworkEvents.class), 0, 0);
+        XBundle bundleA = mockBundle(5);
+        XBundle bundleB = mockBundle(6);
+        statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, bundleA, new Object());
+        statistics.getStats(EventListenerStatisticsImpl.SERVICE_LISTENER, bundleA, new Object());
+        ListenerStats stats = statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, bundleB, new Object());
+        assertEquals(3, statistics.size());
+
+        // The entries of an uninstalled bundle are dropped
+        statistics.removeBundle(5);
+        assertEquals(1, statistics.size());
+        assertSame(stats, statistics.getEntries().get(0));
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        EventListenerStatisticsImpl statistics = new EventListenerStatisticsImpl(mock(FrameworkEvents.class), 0, 0);
+        ListenerStats stats = statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, null, new Object());
+        stats.record(TimeUnit.MICROSECONDS.toNanos(5), false);
+        stats.record(TimeUnit.MICROSECONDS.toNanos(50), false);
+        stats.record(TimeUnit.MICROSECONDS.toNanos(500), false);
+        stats.record(TimeUnit.SECONDS.toNanos(5), true);
+
+        long[] histogram = stats.getLatencyHistogram();
+        long[] bounds = statistics.getLatencyBucketBounds();
+        assertEquals(bounds.length + 1, histogram.length);
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[1]);
+        assertEquals(1, histogram[2]);
+        assertEquals(1, histogram[histogram.length - 1]);
+        assertEquals(4, stats.getCallCount());
+        assertEquals(1, stats.getSlowCallCount());
+        assertEquals(TimeUnit.SECONDS.toNanos(5), stats.getMaxNanos());
+
+        statistics.reset();
+        assertEquals(0, stats.getCallCount());
+        assertEquals(0, stats.getMaxNanos());
+        assertEquals(0, stats.getLatencyHistogram()[0]);
+        assertEquals(1, statistics.getEntries().size());
+
+        // The bucket bounds cannot be modified through the returned array
+        bounds[0] = 0;
+        assertEquals(10L, statistics.getLatencyBucketBounds()[0]);
+    }
+
+    @Test
+    public void testSlowListenerWarning() throws Exception {
+        FrameworkEvents events = mock(FrameworkEvents.class);
+        EventListenerStatisticsImpl statistics = new EventListenerStatisticsImpl(events, 1, 0);
+        XBundle bundle = mockBundle(7);
+        ListenerStats stats = statistics.getStats(EventListenerStatisticsImpl.BUNDLE_LISTENER, bundle, new Object());
+
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10);
+        statistics.record(stats, bundle, start, true);
+        statistics.record(stats, bundle, start, true);
+        assertEquals(2, stats.getSlowCallCount());
+
+        // Repeated warnings for the same listener are suppressed
+        verify(events, times(1)).fireFrameworkEvent(eq(bundle), eq(FrameworkEvent.WARNING), any(Throwable.class));
+
+        // Asynchronous calls are not checked with a zero threshold
+        statistics.record(stats, bundle, start, false);
+        assertEquals(2, stats.getSlowCallCount());
+    }
+
+    private XBundle mockBundle(long bundleId) {
+        XBundle bundle = mock(XBundle.class);
+        when(bundle.getBundleId()).thenReturn(bundleId);
+        when(bundle.getSymbolicName()).thenReturn("bundleA");
+        return bundle;
+    }
+}
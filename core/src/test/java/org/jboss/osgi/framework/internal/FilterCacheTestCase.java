@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.jboss.osgi.framework.internal.ServicePropertyIndex.IndexOperand;
+import org.junit.Test;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * Test the filter cache.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class FilterCacheTestCase {
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        FilterCache cache = new FilterCache(10);
+        Filter filter = cache.createFilter("(foo=bar)");
+        assertSame(filter, cache.createFilter("(foo=bar)"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidFilter() throws Exception {
+        FilterCache cache = new FilterCache(10);
+        try {
+            cache.createFilter("(foo=bar");
+            fail("InvalidSyntaxException expected");
+        } catch (InvalidSyntaxException ex) {
+            // expected
+        }
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        FilterCache cache = new FilterCache(2);
+        Filter filter = cache.createFilter("(a=1)");
+        cache.createFilter("(b=2)");
+        cache.createFilter("(a=1)");
+        cache.createFilter("(c=3)");
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        // The recently used entry survives the eviction
+        assertSame(filter, cache.createFilter("(a=1)"));
+    }
+
+    @Test
+    public void testIndexOperands() throws Exception {
+        FilterCache cache = new FilterCache(10);
+        Filter filter = cache.createFilter("(&(objectClass=A)(tenant=abc))");
+        IndexOperand[] operands = cache.getIndexOperands("(&(objectClass=A)(tenant=abc))", filter);
+        assertEquals(2, operands.length);
+
+        // The operands are parsed once per cached filter
+        assertSame(operands, cache.getIndexOperands("(&(objectClass=A)(tenant=abc))", filter));
+        assertNotSame(operands, cache.getIndexOperands("(&(objectClass=A)(tenant=abc))", FrameworkUtil.createFilter("(&(objectClass=A)(tenant=abc))")));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        FilterCache cache = new FilterCache(0);
+        assertNotSame(cache.createFilter("(foo=bar)"), cache.createFilter("(foo=bar)"));
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.framework.LockStatistics.Entry;
+import org.jboss.osgi.framework.LockStatistics.Holder;
+import org.jboss.osgi.framework.spi.FrameworkWiringLock;
+import org.jboss.osgi.framework.spi.LockException;
+import org.jboss.osgi.framework.spi.LockManager.LockContext;
+import org.jboss.osgi.framework.spi.LockManager.Method;
+import org.junit.Test;
+
+/**
+ * Test the lock wait and hold time recording.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class LockProfilerTestCase {
+
+    @Test
+    public void testLockAndHoldTimes() throws Exception {
+        LockManagerImpl lockManager = new LockManagerImpl();
+        LockProfiler profiler = lockManager.enableProfiling();
+        FrameworkWiringLock wiringLock = lockManager.getItemForType(FrameworkWiringLock.class);
+
+        LockContext context = lockManager.lockItems(Method.RESOLVE, wiringLock);
+        List<Holder> holders = profiler.getCurrentHolders();
+        assertEquals(1, holders.size());
+        assertEquals(Method.RESOLVE, holders.get(0).getMethod());
+        assertEquals(Thread.currentThread().getId(), holders.get(0).getThreadId());
+        assertTrue(holders.get(0).getStackTrace().length > 0);
+        assertTrue(profiler.dump().contains("RESOLVE"));
+        lockManager.unlockItems(context);
+
+        assertEquals(0, profiler.getCurrentHolders().size());
+        List<Entry> entries = profiler.getEntries();
+        assertEquals(1, entries.size());
+        Entry entry = entries.get(0);
+        assertEquals("FrameworkWiringLock", entry.getItemType());
+        assertEquals(1, entry.getLockCount());
+        assertEquals(1, sum(entry.getWaitHistogram()));
+        assertEquals(1, sum(entry.getHoldHistogram()));
+
+        profiler.reset();
+        assertEquals(0, entry.getLockCount());
+        assertEquals(0, sum(entry.getHoldHistogram()));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final LockManagerImpl lockManager = new LockManagerImpl();
+        LockProfiler profiler = lockManager.enableProfiling();
+        final FrameworkWiringLock wiringLock = lockManager.getItemForType(FrameworkWiringLock.class);
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            @Override
+            public void run() {
+                LockContext context = lockManager.lockItems(Method.REFRESH, wiringLock);
+                try {
+                    locked.countDown();
+                    release.await();
+                } catch (InterruptedException ex) {
+                    // ignore
+                } finally {
+                    lockManager.unlockItems(context);
+                }
+            }
+        };
+        holder.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        try {
+            lockManager.lockItems(Method.INSTALL, 100, TimeUnit.MILLISECONDS, wiringLock);
+            fail("LockException expected");
+        } catch (LockException ex) {
+            // expected
+        } finally {
+            release.countDown();
+            holder.join(5000);
+        }
+
+        Entry install = null;
+        for (Entry entry : profiler.getEntries()) {
+            if (entry.getMethod() == Method.INSTALL)
+                install = entry;
+        }
+        assertNotNull(install);
+        assertEquals(0, install.getLockCount());
+        assertEquals(1, install.getTimeoutCount());
+        assertTrue(install.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    private long sum(long[] histogram) {
+        long result = 0;
+        for (long count : histogram) {
+            result += count;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.osgi.framework.spi.LockException;
+import org.jboss.osgi.framework.spi.LockManager.LockContext;
+import org.jboss.osgi.framework.spi.LockManager.LockableItem;
+import org.jboss.osgi.framework.spi.LockManager.Method;
+import org.junit.Test;
+
+/**
+ * Test the deadlock detection of the {@link LockManagerImpl}.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class LockWaitGraphTestCase {
+
+    @Test
+    public void testNestedDeadlock() throws Exception {
+        final LockManagerImpl lockManager = new LockManagerImpl();
+        final TestItem itemA = new TestItem("itemA");
+        final TestItem itemB = new TestItem("itemB");
+        final CountDownLatch outerLocked = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        long start = System.nanoTime();
+        startNested(lockManager, itemA, itemB, outerLocked, done, errors);
+        startNested(lockManager, itemB, itemA, outerLocked, done, errors);
+        assertTrue("Tasks completed", done.await(10, TimeUnit.SECONDS));
+        assertTrue("Detected before the timeout", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+
+        // Exactly one of the nested requests fails, the other one succeeds
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage(), errors.get(0).getMessage().contains("Deadlock"));
+        assertTrue(errors.get(0).getMessage().contains("itemA"));
+        assertTrue(errors.get(0).getMessage().contains("itemB"));
+    }
+
+    private void startNested(final LockManagerImpl lockManager, final TestItem outer, final TestItem inner, final CountDownLatch outerLocked,
+            final CountDownLatch done, final List<Throwable> errors) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                LockContext outerContext = lockManager.lockItems(Method.START, outer);
+                try {
+                    outerLocked.countDown();
+                    outerLocked.await();
+                    LockContext innerContext = lockManager.lockItems(Method.STOP, 30, TimeUnit.SECONDS, inner);
+                    lockManager.unlockItems(innerContext);
+                } catch (Throwable th) {
+                    if (th instanceof LockException) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    }
+                } finally {
+                    lockManager.unlockItems(outerContext);
+                    done.countDown();
+                }
+            }
+        };
+        thread.start();
+    }
+
+    static class TestItem implements LockableItem {
+        final ReentrantLock itemLock = new ReentrantLock();
+        final String name;
+
+        TestItem(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public ReentrantLock getReentrantLock() {
+            return itemLock;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the memory mapped JAR file.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class MappedJarFileTestCase {
+
+    private File jarFile;
+
+    @Before
+    public void setUp() throws Exception {
+        jarFile = File.createTempFile("mapped-jar-file", ".jar");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        jarFile.delete();
+    }
+
+    @Test
+    public void testEntryContent() throws Exception {
+        byte[] classBytes = new byte[10000];
+        for (int i = 0; i < classBytes.length; i++) {
+            classBytes[i] = (byte) (i % 7);
+        }
+        byte[] storedBytes = "stored content".getBytes("UTF-8");
+
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile), getManifest());
+        try {
+            addEntry(jos, "org/acme/Foo.class", classBytes, false);
+            addEntry(jos, "org/acme/foo.txt", storedBytes, true);
+            addEntry(jos, "empty.txt", new byte[0], false);
+        } finally {
+            jos.close();
+        }
+
+        MappedJarFile mappedJar = MappedJarFile.open(jarFile);
+        assertNotNull(mappedJar);
+        assertArrayEquals(classBytes, mappedJar.getBytes("org/acme/Foo.class"));
+        assertArrayEquals(classBytes, mappedJar.getBytes("/org/acme/Foo.class"));
+        assertArrayEquals(storedBytes, mappedJar.getBytes("org/acme/foo.txt"));
+        assertArrayEquals(new byte[0], mappedJar.getBytes("empty.txt"));
+        assertEquals(classBytes.length, mappedJar.getSize("org/acme/Foo.class"));
+        assertNull(mappedJar.getBytes("org/acme/Bar.class"));
+        assertNull(mappedJar.getBytes("org/acme"));
+
+        Manifest manifest = mappedJar.getManifest();
+        assertEquals("org.acme.foo", manifest.getMainAttributes().getValue("Bundle-SymbolicName"));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        byte[] storedBytes = "stored content".getBytes("UTF-8");
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile), getManifest());
+        try {
+            addEntry(jos, "org/acme/foo.txt", storedBytes, true);
+        } finally {
+            jos.close();
+        }
+
+        MappedJarFile mappedJar = MappedJarFile.open(jarFile);
+        assertArrayEquals(storedBytes, mappedJar.getBytes("org/acme/foo.txt"));
+        mappedJar.close();
+
+        // The entry names survive the released mapping
+        assertTrue(mappedJar.contains("org/acme/foo.txt"));
+        try {
+            mappedJar.getBytes("org/acme/foo.txt");
+            fail("IOException expected");
+        } catch (IOException ex) {
+            // expected
+        }
+        mappedJar.close();
+        assertTrue(jarFile.delete());
+    }
+
+    @Test
+    public void testDirectories() throws Exception {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile), getManifest());
+        try {
+            addEntry(jos, "org/acme/Foo.class", new byte[] { 1 }, false);
+            addEntry(jos, "org/acme/Bar.class", new byte[] { 2 }, false);
+            addEntry(jos, "org/acme/impl/Baz.class", new byte[] { 3 }, false);
+        } finally {
+            jos.close();
+        }
+
+        MappedJarFile mappedJar = MappedJarFile.open(jarFile);
+        assertNotNull(mappedJar);
+
+        // Directories without explicit entries are derived from the entry names
+        assertTrue(mappedJar.isDirectory(""));
+        assertTrue(mappedJar.isDirectory("org/acme/"));
+        assertTrue(mappedJar.contains("/org"));
+        assertFalse(mappedJar.isDirectory("org/acme/Foo.class"));
+        assertFalse(mappedJar.contains("org/other"));
+
+        assertEquals(Arrays.asList("META-INF", "org"), mappedJar.getChildren("/"));
+        assertEquals(Arrays.asList("org/acme/Bar.class", "org/acme/Foo.class", "org/acme/impl"), mappedJar.getChildren("org/acme"));
+        assertEquals(Collections.emptyList(), mappedJar.getChildren("org/other"));
+        assertEquals(4, mappedJar.getFileNames().size());
+    }
+
+    @Test
+    public void testSignedJar() throws Exception {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile), getManifest());
+        try {
+            addEntry(jos, "META-INF/ACME.SF", new byte[] { 1 }, false);
+            addEntry(jos, "META-INF/ACME.RSA", new byte[] { 2 }, false);
+            addEntry(jos, "org/acme/Foo.class", new byte[] { 3 }, false);
+        } finally {
+            jos.close();
+        }
+
+        // Signed content is served by the VFS
+        assertNull(MappedJarFile.open(jarFile));
+    }
+
+    @Test
+    public void testNotAnArchive() throws Exception {
+        FileOutputStream fos = new FileOutputStream(jarFile);
+        try {
+            fos.write(new byte[100]);
+        } finally {
+            fos.close();
+        }
+        assertNull(MappedJarFile.open(jarFile));
+    }
+
+    @Test
+    public void testInvalidHeaderOffset() throws Exception {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jarFile), getManifest());
+        try {
+            addEntry(jos, "org/acme/Foo.class", new byte[] { 1 }, false);
+        } finally {
+            jos.close();
+        }
+
+        // Point the first central directory entry past the start of the central directory
+        RandomAccessFile raf = new RandomAccessFile(jarFile, "rw");
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) raf.length()).order(ByteOrder.LITTLE_ENDIAN);
+            raf.readFully(buffer.array());
+            int endOffset = buffer.limit() - 22;
+            while (buffer.getInt(endOffset) != 0x06054b50) {
+                endOffset--;
+            }
+            int directoryOffset = buffer.getInt(endOffset + 16);
+            buffer.putInt(directoryOffset + 42, directoryOffset);
+            raf.seek(0);
+            raf.write(buffer.array());
+        } finally {
+            raf.close();
+        }
+        assertNull(MappedJarFile.open(jarFile));
+    }
+
+    @Test
+    public void testMatchesPattern() throws Exception {
+        assertTrue(RevisionContent.matchesPattern("Foo.class", "*"));
+        assertTrue(RevisionContent.matchesPattern("Foo.class", "*.class"));
+        assertTrue(RevisionContent.matchesPattern("Foo.class", "Foo*"));
+        assertTrue(RevisionContent.matchesPattern("Foo.class", "F*o*.class"));
+        assertTrue(RevisionContent.matchesPattern("Foo.class", "Foo.class"));
+        assertFalse(RevisionContent.matchesPattern("Foo.class", "*.txt"));
+        assertFalse(RevisionContent.matchesPattern("Foo.class", "Bar*"));
+        assertFalse(RevisionContent.matchesPattern("ab", "ab*b"));
+    }
+
+    private Manifest getManifest() {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-SymbolicName", "org.acme.foo");
+        return manifest;
+    }
+
+    private void addEntry(JarOutputStream jos, String name, byte[] bytes, boolean stored) throws Exception {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        jos.putNextEntry(entry);
+        jos.write(bytes);
+        jos.closeEntry();
+    }
+}
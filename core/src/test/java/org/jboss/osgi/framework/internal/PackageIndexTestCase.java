@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XPackageCapability;
+import org.junit.Test;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+
+/**
+ * Test the package export index.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class PackageIndexTestCase {
+
+    @Test
+    public void testExporterOrder() throws Exception {
+        PackageIndex index = new PackageIndex();
+        XBundleRevision brevA = mockRevision(1, "org.acme", "1.0.0");
+        XBundleRevision brevB = mockRevision(2, "org.acme", "2.0.0");
+        XBundleRevision brevC = mockRevision(3, "org.acme", "2.0.0");
+        index.addRevision(brevC);
+        index.addRevision(brevA);
+        index.addRevision(brevB);
+
+        List<XPackageCapability> exporters = index.getExporters("org.acme");
+        assertEquals(3, exporters.size());
+        assertSame(brevB, exporters.get(0).getResource());
+        assertSame(brevC, exporters.get(1).getResource());
+        assertSame(brevA, exporters.get(2).getResource());
+        assertTrue(index.getExporters("org.foo").isEmpty());
+    }
+
+    @Test
+    public void testRemoveRevision() throws Exception {
+        PackageIndex index = new PackageIndex();
+        XBundleRevision brevA = mockRevision(1, "org.acme", "1.0.0");
+        XBundleRevision brevB = mockRevision(2, "org.acme", "2.0.0");
+        index.addRevision(brevA);
+        index.addRevision(brevB);
+
+        index.removeRevision(brevB);
+        List<XPackageCapability> exporters = index.getExporters("org.acme");
+        assertEquals(1, exporters.size());
+        assertSame(brevA, exporters.get(0).getResource());
+
+        index.removeRevision(brevA);
+        assertTrue(index.getExporters("org.acme").isEmpty());
+    }
+
+    private XBundleRevision mockRevision(long bundleId, String packageName, String version) {
+        XBundle bundle = mock(XBundle.class);
+        when(bundle.getBundleId()).thenReturn(bundleId);
+        XBundleRevision brev = mock(XBundleRevision.class);
+        when(brev.getBundle()).thenReturn(bundle);
+        XPackageCapability pcap = mock(XPackageCapability.class);
+        when(pcap.adapt(XPackageCapability.class)).thenReturn(pcap);
+        when(pcap.getPackageName()).thenReturn(packageName);
+        when(pcap.getVersion()).thenReturn(Version.parseVersion(version));
+        when(pcap.getResource()).thenReturn(brev);
+        List<Capability> caps = Collections.<Capability>singletonList(pcap);
+        when(brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)).thenReturn(caps);
+        return brev;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XEnvironment;
+import org.jboss.osgi.resolver.XResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+
+/**
+ * Test the persistent resolution cache.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class ResolutionCacheTestCase {
+
+    private File storageArea;
+    private Hashtable<String, String> headersA;
+    private XBundleRevision revA;
+    private XBundleRevision revB;
+    private List<XResource> resources;
+    private XEnvironment env;
+    private Requirement reqA;
+    private Capability capB;
+
+    @Before
+    public void setUp() throws Exception {
+        storageArea = File.createTempFile("resolution-cache", "");
+        storageArea.delete();
+
+        headersA = new Hashtable<String, String>();
+        headersA.put("Bundle-SymbolicName", "bundleA");
+        headersA.put("Import-Package", "org.acme");
+        Hashtable<String, String> headersB = new Hashtable<String, String>();
+        headersB.put("Bundle-SymbolicName", "bundleB");
+        headersB.put("Export-Package", "org.acme");
+
+        revA = mockRevision("locationA", headersA);
+        revB = mockRevision("locationB", headersB);
+
+        // A imports a package from B
+        reqA = mock(Requirement.class);
+        when(reqA.getResource()).thenReturn(revA);
+        when(revA.getRequirements(null)).thenReturn(Collections.singletonList(reqA));
+        when(revA.getCapabilities(null)).thenReturn(Collections.<Capability> emptyList());
+        capB = mock(Capability.class);
+        when(capB.getResource()).thenReturn(revB);
+        when(revB.getRequirements(null)).thenReturn(Collections.<Requirement> emptyList());
+        when(revB.getCapabilities(null)).thenReturn(Collections.singletonList(capB));
+
+        resources = new ArrayList<XResource>(Arrays.<XResource> asList(revA, revB));
+        env = mock(XEnvironment.class);
+        when(env.getResources(null)).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return new ArrayList<XResource>(resources).iterator();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        new File(storageArea, ResolutionCache.CACHE_FILE).delete();
+        storageArea.delete();
+    }
+
+    @Test
+    public void testStoreAndApply() throws Exception {
+        ResolutionCache cache = new ResolutionCache(storageArea, "org.acme.system");
+        cache.store(env, getWirings());
+
+        ResolutionCache restored = new ResolutionCache(storageArea, "org.acme.system");
+        restored.load();
+        restored.verify(env);
+        Map<Resource, List<Wire>> wiremap = restored.getWiremap(env, new HashMap<Resource, Wiring>(), Collections.singleton(revA), Collections.<Resource> emptySet());
+        assertNotNull(wiremap);
+
+        // The unresolved provider is applied together with the requested resource
+        assertEquals(2, wiremap.size());
+        List<Wire> wires = wiremap.get(revA);
+        assertEquals(1, wires.size());
+        assertSame(reqA, wires.get(0).getRequirement());
+        assertSame(capB, wires.get(0).getCapability());
+        assertSame(revB, wires.get(0).getProvider());
+        assertEquals(0, wiremap.get(revB).size());
+    }
+
+    @Test
+    public void testBootstrapThenPersistent() throws Exception {
+        ResolutionCache cache = new ResolutionCache(storageArea, "org.acme.system");
+        cache.store(env, getWirings());
+
+        ResolutionCache restored = new ResolutionCache(storageArea, "org.acme.system");
+        restored.load();
+
+        // The bootstrap bundle is resolved before the persistent bundles are installed
+        resources.remove(revA);
+        assertNull(restored.getWiremap(env, new HashMap<Resource, Wiring>(), Collections.singleton(revB), Collections.<Resource> emptySet()));
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        wirings.put(revB, getWirings().get(revB));
+
+        // The persistent bundles are installed and resolved with the stored wiring
+        resources.add(revA);
+        restored.verify(env);
+        Map<Resource, List<Wire>> wiremap = restored.getWiremap(env, wirings, Collections.singleton(revA), Collections.<Resource> emptySet());
+        assertNotNull(wiremap);
+        assertEquals(1, wiremap.size());
+        assertSame(capB, wiremap.get(revA).get(0).getCapability());
+    }
+
+    @Test
+    public void testFingerprintMismatch() throws Exception {
+        ResolutionCache cache = new ResolutionCache(storageArea, "org.acme.system");
+        cache.store(env, getWirings());
+
+        // Changed system packages
+        ResolutionCache restored = new ResolutionCache(storageArea, "org.acme.other");
+        restored.load();
+        restored.verify(env);
+        assertNull(restored.getWiremap(env, new HashMap<Resource, Wiring>(), Collections.singleton(revA), Collections.<Resource> emptySet()));
+
+        // Changed bundle headers
+        restored = new ResolutionCache(storageArea, "org.acme.system");
+        restored.load();
+        headersA.put("Import-Package", "org.acme.other");
+        restored.verify(env);
+        assertNull(restored.getWiremap(env, new HashMap<Resource, Wiring>(), Collections.singleton(revA), Collections.<Resource> emptySet()));
+    }
+
+    @Test
+    public void testChangedResources() throws Exception {
+        ResolutionCache cache = new ResolutionCache(storageArea, "org.acme.system");
+        cache.store(env, getWirings());
+
+        ResolutionCache restored = new ResolutionCache(storageArea, "org.acme.system");
+        restored.load();
+        restored.verify(env);
+
+        // A bundle installed after verification makes the stored wiring inapplicable
+        Hashtable<String, String> headersC = new Hashtable<String, String>();
+        headersC.put("Bundle-SymbolicName", "bundleC");
+        XBundleRevision revC = mockRevision("locationC", headersC);
+        resources.add(revC);
+        assertNull(restored.getWiremap(env, new HashMap<Resource, Wiring>(), Collections.singleton(revA), Collections.<Resource> emptySet()));
+
+        resources.remove(revC);
+        assertNotNull(restored.getWiremap(env, new HashMap<Resource, Wiring>(), Collections.singleton(revA), Collections.<Resource> emptySet()));
+    }
+
+    private Map<Resource, Wiring> getWirings() {
+        Wire wire = new ResolutionCache.CachedWire(capB, reqA);
+        Wiring wiringA = mock(Wiring.class);
+        when(wiringA.getRequiredResourceWires(null)).thenReturn(Collections.singletonList(wire));
+        Wiring wiringB = mock(Wiring.class);
+        when(wiringB.getRequiredResourceWires(null)).thenReturn(Collections.<Wire> emptyList());
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        wirings.put(revA, wiringA);
+        wirings.put(revB, wiringB);
+        return wirings;
+    }
+
+    private XBundleRevision mockRevision(String location, Hashtable<String, String> headers) {
+        XBundleRevision brev = mock(XBundleRevision.class);
+        XBundle bundle = mock(XBundle.class);
+        when(brev.getBundle()).thenReturn(bundle);
+        when(bundle.getBundleRevision()).thenReturn(brev);
+        when(bundle.getLocation()).thenReturn(location);
+        when(bundle.getHeaders("")).thenReturn(headers);
+        return brev;
+    }
+}
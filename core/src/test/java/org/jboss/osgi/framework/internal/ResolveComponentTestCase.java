@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Test the partition of resolve requests into independent components.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class ResolveComponentTestCase {
+
+    @Test
+    public void testIndependentComponents() throws Exception {
+        ResolveContext context = mock(ResolveContext.class);
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        when(context.getWirings()).thenReturn(wirings);
+
+        Resource resA = mockResource();
+        Resource resB = mockResource();
+        Resource resC = mockResource();
+        Resource resD = mockResource();
+        Resource system = mockResource();
+        wirings.put(system, mock(Wiring.class));
+
+        // A requires B, C and D only require the resolved system resource
+        addRequirement(context, resA, resB);
+        addRequirement(context, resC, system);
+        addRequirement(context, resD, system);
+
+        List<ResolveComponent> components = ResolveComponent.partition(context, Arrays.asList(resA, resB, resC), Collections.singleton(resD));
+        assertEquals(3, components.size());
+        ResolveComponent compA = components.get(0);
+        assertTrue(compA.getMandatory().containsAll(Arrays.asList(resA, resB)));
+        assertEquals(2, compA.getMandatory().size());
+        assertEquals(Collections.singleton(resC), components.get(1).getMandatory());
+        assertEquals(Collections.singleton(resD), components.get(2).getOptional());
+    }
+
+    @Test
+    public void testTransitiveUnresolvedProvider() throws Exception {
+        ResolveContext context = mock(ResolveContext.class);
+        when(context.getWirings()).thenReturn(new HashMap<Resource, Wiring>());
+
+        // A and C are connected through the unrequested provider B
+        Resource resA = mockResource();
+        Resource resB = mockResource();
+        Resource resC = mockResource();
+        addRequirement(context, resA, resB);
+        addRequirement(context, resC, resB);
+
+        List<ResolveComponent> components = ResolveComponent.partition(context, Arrays.asList(resA, resC), Collections.<Resource> emptySet());
+        assertEquals(1, components.size());
+        assertEquals(2, components.get(0).getMandatory().size());
+    }
+
+    private Resource mockResource() {
+        Resource res = mock(Resource.class);
+        when(res.getRequirements(null)).thenReturn(Collections.<Requirement> emptyList());
+        return res;
+    }
+
+    private void addRequirement(ResolveContext context, Resource requirer, Resource provider) {
+        Requirement req = mock(Requirement.class);
+        Capability cap = mock(Capability.class);
+        when(cap.getResource()).thenReturn(provider);
+        when(requirer.getRequirements(null)).thenReturn(Collections.singletonList(req));
+        when(context.findProviders(req)).thenReturn(Collections.singletonList(cap));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test the memoized service assignability verdicts.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class ServiceAssignabilityCacheTestCase {
+
+    @Test
+    public void testVerdict() throws Exception {
+        ServiceAssignabilityCache cache = new ServiceAssignabilityCache();
+        XBundleRevision requester = Mockito.mock(XBundleRevision.class);
+        XBundleRevision owner = Mockito.mock(XBundleRevision.class);
+        assertNull(cache.getVerdict(requester, owner, "org.acme.Foo"));
+
+        cache.putVerdict(requester, owner, "org.acme.Foo", true, cache.getGeneration());
+        assertEquals(Boolean.TRUE, cache.getVerdict(requester, owner, "org.acme.Foo"));
+        assertNull(cache.getVerdict(requester, owner, "org.acme.Bar"));
+        assertNull(cache.getVerdict(owner, requester, "org.acme.Foo"));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ServiceAssignabilityCache cache = new ServiceAssignabilityCache();
+        XBundleRevision revA = Mockito.mock(XBundleRevision.class);
+        XBundleRevision revB = Mockito.mock(XBundleRevision.class);
+        XBundleRevision revC = Mockito.mock(XBundleRevision.class);
+        cache.putVerdict(revA, revB, "org.acme.Foo", true, cache.getGeneration());
+        cache.putVerdict(revC, revB, "org.acme.Foo", false, cache.getGeneration());
+        cache.putVerdict(revC, revA, "org.acme.Foo", true, cache.getGeneration());
+        assertEquals(3, cache.size());
+
+        // Invalidates the verdicts of revA as requester and as owner
+        cache.invalidate(revA);
+        assertNull(cache.getVerdict(revA, revB, "org.acme.Foo"));
+        assertNull(cache.getVerdict(revC, revA, "org.acme.Foo"));
+        assertEquals(Boolean.FALSE, cache.getVerdict(revC, revB, "org.acme.Foo"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDynamicWire() throws Exception {
+        ServiceAssignabilityCache cache = new ServiceAssignabilityCache();
+        XBundleRevision revA = Mockito.mock(XBundleRevision.class);
+        XBundleRevision revB = Mockito.mock(XBundleRevision.class);
+        cache.putVerdict(revA, revB, "org.acme.Foo", false, cache.getGeneration());
+        cache.putVerdict(revB, revA, "org.acme.Foo", true, cache.getGeneration());
+
+        // A dynamic wire of revA changes its class space as requester and as service owner
+        long generation = cache.getGeneration();
+        cache.invalidate(revA);
+        assertNull(cache.getVerdict(revA, revB, "org.acme.Foo"));
+        assertNull(cache.getVerdict(revB, revA, "org.acme.Foo"));
+        assertTrue(cache.getGeneration() != generation);
+    }
+
+    @Test
+    public void testStaleGeneration() throws Exception {
+        ServiceAssignabilityCache cache = new ServiceAssignabilityCache();
+        XBundleRevision requester = Mockito.mock(XBundleRevision.class);
+        XBundleRevision owner = Mockito.mock(XBundleRevision.class);
+
+        // A verdict computed before a concurrent invalidation is not cached
+        long generation = cache.getGeneration();
+        cache.invalidate(owner);
+        cache.putVerdict(requester, owner, "org.acme.Foo", true, generation);
+        assertNull(cache.getVerdict(requester, owner, "org.acme.Foo"));
+        assertTrue(cache.size() == 0);
+    }
+}
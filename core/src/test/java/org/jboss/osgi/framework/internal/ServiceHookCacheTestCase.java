@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.framework.spi.ServiceState;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.hooks.service.FindHook;
+
+/**
+ * Test the cached hook services.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class ServiceHookCacheTestCase {
+
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testRankingOrderAndCaching() throws Exception {
+        FindHook lowHook = mock(FindHook.class);
+        FindHook highHook = mock(FindHook.class);
+        ServiceReference lowRef = mock(ServiceReference.class);
+        ServiceReference highRef = mock(ServiceReference.class);
+        BundleContext syscontext = mock(BundleContext.class);
+        when(syscontext.getServiceReferences(FindHook.class.getName(), null)).thenReturn(new ServiceReference[] { lowRef, highRef });
+        when(syscontext.getService(lowRef)).thenReturn(lowHook);
+        when(syscontext.getService(highRef)).thenReturn(highHook);
+
+        ServiceHookCache cache = new ServiceHookCache();
+        List<FindHook> hooks = cache.getHooks(FindHook.class, syscontext);
+        assertEquals(Arrays.asList(highHook, lowHook), hooks);
+        assertSame(hooks, cache.getHooks(FindHook.class, syscontext));
+        verify(syscontext, times(1)).getServiceReferences(FindHook.class.getName(), null);
+    }
+
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testHookServiceChanged() throws Exception {
+        BundleContext syscontext = mock(BundleContext.class);
+        ServiceHookCache cache = new ServiceHookCache();
+        assertTrue(cache.getHooks(FindHook.class, syscontext).isEmpty());
+
+        // A non-hook service does not invalidate the cached hooks
+        ServiceState serviceState = mock(ServiceState.class);
+        when(serviceState.getClassNames()).thenReturn(Collections.singletonList("org.acme.Foo"));
+        cache.serviceChanged(serviceState);
+        assertEquals(0, cache.getGeneration());
+
+        FindHook hook = mock(FindHook.class);
+        ServiceReference sref = mock(ServiceReference.class);
+        when(syscontext.getServiceReferences(FindHook.class.getName(), null)).thenReturn(new ServiceReference[] { sref });
+        when(syscontext.getService(sref)).thenReturn(hook);
+        ServiceState hookState = mock(ServiceState.class);
+        when(hookState.getClassNames()).thenReturn(Collections.singletonList(FindHook.class.getName()));
+        cache.serviceChanged(hookState);
+        assertEquals(1, cache.getGeneration());
+        assertEquals(Collections.singletonList(hook), cache.getHooks(FindHook.class, syscontext));
+    }
+}
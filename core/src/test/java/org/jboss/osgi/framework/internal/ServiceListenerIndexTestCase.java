@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import org.jboss.osgi.framework.internal.FrameworkEventsImpl.ServiceListenerRegistration;
+import org.jboss.osgi.resolver.XBundle;
+import org.junit.Test;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.UnfilteredServiceListener;
+
+/**
+ * Test the objectClass index of service listeners.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class ServiceListenerIndexTestCase {
+
+    @Test
+    public void testObjectClassFromFilter() throws Exception {
+        assertEquals("org.acme.Foo", ServicePropertyIndex.getObjectClass("(objectClass=org.acme.Foo)"));
+        assertEquals("org.acme.Foo", ServicePropertyIndex.getObjectClass("(&(foo=bar)(OBJECTCLASS=org.acme.Foo))"));
+        assertNull(ServicePropertyIndex.getObjectClass("(objectClass=org.acme.*)"));
+        assertNull(ServicePropertyIndex.getObjectClass("(objectClass=*)"));
+        assertNull(ServicePropertyIndex.getObjectClass("(objectClass~=org.acme.Foo)"));
+        assertNull(ServicePropertyIndex.getObjectClass("(|(objectClass=org.acme.Foo)(objectClass=org.acme.Bar))"));
+        assertNull(ServicePropertyIndex.getObjectClass("(!(objectClass=org.acme.Foo))"));
+    }
+
+    @Test
+    public void testAddRemove() throws Exception {
+        ServiceListenerIndex index = new ServiceListenerIndex();
+        ServiceListenerRegistration fooReg = createRegistration(mock(ServiceListener.class), "(objectClass=org.acme.Foo)");
+        ServiceListenerRegistration anyReg = createRegistration(mock(ServiceListener.class), "(foo=bar)");
+        ServiceListenerRegistration unfilteredReg = createRegistration(mock(UnfilteredServiceListener.class), "(objectClass=org.acme.Foo)");
+        index.addListener(fooReg);
+        index.addListener(anyReg);
+        index.addListener(unfilteredReg);
+
+        assertArrayEquals(new Object[] { fooReg }, index.getListeners("org.acme.Foo"));
+        assertEquals(0, index.getListeners("org.acme.Bar").length);
+        assertArrayEquals(new Object[] { anyReg, unfilteredReg }, index.getResidualListeners());
+
+        index.removeListener(fooReg);
+        index.removeListener(anyReg);
+        assertEquals(0, index.getListeners("org.acme.Foo").length);
+        assertArrayEquals(new Object[] { unfilteredReg }, index.getResidualListeners());
+    }
+
+    private ServiceListenerRegistration createRegistration(ServiceListener listener, String filter) throws Exception {
+        return new ServiceListenerRegistration(mock(XBundle.class), listener, FrameworkUtil.createFilter(filter));
+    }
+}
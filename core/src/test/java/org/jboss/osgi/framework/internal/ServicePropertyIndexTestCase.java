@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.jboss.osgi.framework.spi.BundleManager;
+import org.jboss.osgi.framework.spi.FrameworkEvents;
+import org.jboss.osgi.framework.spi.ServiceState;
+import org.jboss.osgi.resolver.XBundle;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+/**
+ * Test the service property index.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class ServicePropertyIndexTestCase {
+
+    ServiceManagerImpl serviceManager;
+    ServicePropertyIndex index;
+    XBundle owner;
+    long serviceId;
+
+    @Before
+    public void setUp() {
+        serviceManager = new ServiceManagerImpl(mock(BundleManager.class), mock(FrameworkEvents.class));
+        index = ServicePropertyIndex.create("tenant, Region");
+        owner = mock(XBundle.class);
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        assertNull(ServicePropertyIndex.create(null));
+        assertNull(ServicePropertyIndex.create(" , "));
+        assertNull(ServicePropertyIndex.create(Constants.OBJECTCLASS));
+    }
+
+    @Test
+    public void testEqualityAndPresence() throws Exception {
+        ServiceState<?> s1 = addService("A", "tenant", "abc");
+        ServiceState<?> s2 = addService("A", "tenant", "xyz");
+        ServiceState<?> s3 = addService("A", "region", "eu");
+        ServiceSnapshot all = ServiceSnapshot.EMPTY.add(s1).add(s2).add(s3);
+
+        Map<String, ServiceSnapshot> classes = Collections.singletonMap("A", all);
+        assertEquals(0, index.getCandidates(ServicePropertyIndex.parseOperands("(objectClass=B)"), all, classes).size());
+        assertEquals(Arrays.asList(s1), index.getCandidates(ServicePropertyIndex.parseOperands("(&(objectClass=A)(tenant=abc))"), all, classes).serviceList);
+        assertEquals(Arrays.asList(s1), index.getCandidates(ServicePropertyIndex.parseOperands("(TENANT=abc)"), all, classes).serviceList);
+        // Snapshots are in ascending order, the lower service id ranks higher
+        assertEquals(Arrays.asList(s2, s1), index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=*)"), all, classes).serviceList);
+        assertEquals(0, index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=none)"), all, classes).size());
+
+        // Operands that are not indexed return the given snapshot
+        assertSame(all, index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=a*)"), all, classes));
+        assertSame(all, index.getCandidates(ServicePropertyIndex.parseOperands("(|(tenant=abc)(region=eu))"), all, classes));
+        assertSame(all, index.getCandidates(ServicePropertyIndex.parseOperands("(other=abc)"), all, classes));
+    }
+
+    @Test
+    public void testOpaqueValues() throws Exception {
+        ServiceState<?> s1 = addService("A", "tenant", "abc");
+        ServiceState<?> s2 = addService("A", "tenant", new Integer(7));
+        ServiceState<?> s3 = addService("A", "tenant", new String[] { "abc", "xyz" });
+        ServiceSnapshot all = ServiceSnapshot.EMPTY.add(s1).add(s2).add(s3);
+
+        Map<String, ServiceSnapshot> classes = Collections.emptyMap();
+        assertEquals(Arrays.asList(s3, s2, s1), index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=abc)"), all, classes).serviceList);
+        assertEquals(Arrays.asList(s3, s2), index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=xyz)"), all, classes).serviceList);
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws Exception {
+        ServiceState<?> s1 = addService("A", "tenant", "abc");
+        ServiceState<?> s2 = addService("A", "tenant", "xyz");
+        ServiceSnapshot all = ServiceSnapshot.EMPTY.add(s1).add(s2);
+        Map<String, ServiceSnapshot> classes = Collections.emptyMap();
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("tenant", "xyz");
+        s1.setProperties(props);
+        index.updateService(s1, s1.getPreviousProperties());
+        assertEquals(0, index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=abc)"), all, classes).size());
+        assertEquals(Arrays.asList(s2, s1), index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=xyz)"), all, classes).serviceList);
+
+        index.removeService(s2);
+        assertEquals(Arrays.asList(s1), index.getCandidates(ServicePropertyIndex.parseOperands("(tenant=xyz)"), all, classes).serviceList);
+    }
+
+    @Test
+    public void testIntersection() throws Exception {
+        ServiceState<?> s1 = addService("A", "tenant", "abc", "region", "eu");
+        ServiceState<?> s2 = addService("A", "tenant", "abc", "region", "us");
+        ServiceState<?> s3 = addService("A", "tenant", "xyz", "region", "eu");
+        ServiceState<?> s4 = addService("B", "tenant", "abc", "region", "eu");
+        ServiceSnapshot all = ServiceSnapshot.EMPTY.add(s1).add(s2).add(s3).add(s4);
+
+        Map<String, ServiceSnapshot> classes = new HashMap<String, ServiceSnapshot>();
+        classes.put("A", ServiceSnapshot.EMPTY.add(s1).add(s2).add(s3));
+        classes.put("B", ServiceSnapshot.EMPTY.add(s4));
+        assertEquals(Arrays.asList(s4, s1), index.getCandidates(ServicePropertyIndex.parseOperands("(&(tenant=abc)(region=eu))"), all, classes).serviceList);
+        assertEquals(Arrays.asList(s1), index.getCandidates(ServicePropertyIndex.parseOperands("(&(objectClass=A)(tenant=abc)(region=eu))"), all, classes).serviceList);
+        assertEquals(0, index.getCandidates(ServicePropertyIndex.parseOperands("(&(tenant=xyz)(region=us))"), all, classes).size());
+
+        // Operands that are not indexed do not narrow the intersection
+        assertEquals(Arrays.asList(s4, s1), index.getCandidates(ServicePropertyIndex.parseOperands("(&(tenant=abc)(region=eu)(other=1))"), all, classes).serviceList);
+    }
+
+    @Test
+    public void testParseOperands() throws Exception {
+        assertEquals("[(tenant=abc), (objectclass=A)]", Arrays.toString(ServicePropertyIndex.parseOperands("(&(TENANT=abc)(objectClass=A)(region=e*)(|(a=b)(c=d)))")));
+        assertEquals("[(tenant=*)]", Arrays.toString(ServicePropertyIndex.parseOperands("(tenant=*)")));
+        assertEquals("[(tenant=a(b)]", Arrays.toString(ServicePropertyIndex.parseOperands("(tenant=a\\(b)")));
+        assertEquals(0, ServicePropertyIndex.parseOperands("(tenant>=abc)").length);
+    }
+
+    private ServiceState<?> addService(String className, String key, Object value) {
+        return addService(className, key, value, null, null);
+    }
+
+    private ServiceState<?> addService(String className, String key, Object value, String otherKey, Object otherValue) {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put(key, value);
+        if (otherKey != null)
+            props.put(otherKey, otherValue);
+        ServiceState.ValueProvider<Object> provider = new ServiceState.ValueProvider<Object>() {
+            @Override
+            public boolean isFactoryValue() {
+                return true;
+            }
+
+            @Override
+            public Object getValue() {
+                return null;
+            }
+        };
+        ServiceState<?> serviceState = new ServiceStateImpl<Object>(serviceManager, owner, ++serviceId, new String[] { className }, provider, props);
+        index.addService(serviceState);
+        return serviceState;
+    }
+}
@@ -28,6 +28,7 @@ import org.jboss.modules.ResourceLoader;
 import org.jboss.osgi.framework.spi.VirtualFileResourceLoader;
 import org.jboss.osgi.metadata.OSGiManifestBuilder;
 import org.jboss.osgi.testing.OSGiTestHelper;
+import org.jboss.osgi.vfs.VFSUtils;
 import org.jboss.osgi.vfs.VirtualFile;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.asset.Asset;
@@ -38,9 +39,13 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -87,6 +92,23 @@ public class VirtualFileResourceLoaderTestCase {
         assertNotNull("ClassSpec not null", result);
     }
 
+    @Test
+    public void testClassSpecBytes() throws Exception {
+        ResourceLoader loader = new VirtualFileResourceLoader(rootFile);
+        String fileName = SimpleActivator.class.getName().replace('.', '/') + ".class";
+        ClassSpec result = loader.getClassSpec(fileName);
+        assertNotNull("ClassSpec not null", result);
+
+        InputStream input = SimpleActivator.class.getClassLoader().getResourceAsStream(fileName);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try {
+            VFSUtils.copyStream(input, expected);
+        } finally {
+            input.close();
+        }
+        assertArrayEquals(expected.toByteArray(), result.getBytes());
+    }
+
     @Test
     public void testPackageSpec() throws Exception {
         ResourceLoader loader = new VirtualFileResourceLoader(rootFile);
@@ -94,6 +116,21 @@ public class VirtualFileResourceLoaderTestCase {
         assertNotNull("PackageSpec not null", result);
     }
 
+    @Test
+    public void testPackageSpecAttributes() throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.SPECIFICATION_TITLE, "main-title");
+        manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_TITLE, "main-impl");
+        Attributes entryAttributes = new Attributes();
+        entryAttributes.put(Attributes.Name.IMPLEMENTATION_TITLE, "entry-impl");
+        manifest.getEntries().put("org/acme/", entryAttributes);
+
+        // Entry attributes take precedence over the main attributes
+        PackageSpec result = VirtualFileResourceLoader.createPackageSpec(manifest, "org/acme/", null);
+        assertEquals("main-title", result.getSpecTitle());
+        assertEquals("entry-impl", result.getImplTitle());
+    }
+
     @Test
     public void testResource() throws Exception {
         ResourceLoader loader = new VirtualFileResourceLoader(rootFile);
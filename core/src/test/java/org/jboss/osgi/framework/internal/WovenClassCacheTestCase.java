@@ -0,0 +1,103 @@
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package org.jboss.osgi.framework.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.framework.internal.WovenClassCache.CachedClass;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the persistent woven class cache.
+ *
+ * @author thomas.diesler@jboss.com
+ * @since 18-Oct-2026
+ */
+public class WovenClassCacheTestCase {
+
+    private File storageDir;
+
+    @Before
+    public void setUp() throws Exception {
+        storageDir = File.createTempFile("woven-class-cache", "");
+        storageDir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File cacheDir = new File(storageDir, WovenClassCache.CACHE_DIR);
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+        storageDir.delete();
+    }
+
+    @Test
+    public void testStoreAndReplay() throws Exception {
+        byte[] classBytes = new byte[] { 1, 2, 3 };
+        byte[] wovenBytes = new byte[] { 4, 5, 6, 7 };
+        List<String> hooks = Collections.singletonList("org.acme.TracingHook@org.acme:1.0.0");
+
+        WovenClassCache cache = new WovenClassCache(storageDir, "locA#1.0");
+        String key = cache.getKey("org.acme.Foo", classBytes, hooks);
+        assertNull(cache.get(key));
+        cache.put(key, wovenBytes, Arrays.asList("org.acme.trace"));
+
+        // A new cache instance on the same storage finds the entry
+        cache = new WovenClassCache(storageDir, "locA#1.0");
+        CachedClass cached = cache.get(cache.getKey("org.acme.Foo", classBytes, hooks));
+        assertNotNull(cached);
+        assertArrayEquals(wovenBytes, cached.wovenBytes);
+        assertEquals(Arrays.asList("org.acme.trace"), cached.dynamicImports);
+    }
+
+    @Test
+    public void testKeyChanges() throws Exception {
+        byte[] classBytes = new byte[] { 1, 2, 3 };
+        List<String> hooks = Collections.singletonList("org.acme.TracingHook@org.acme:1.0.0");
+
+        WovenClassCache cache = new WovenClassCache(storageDir, "locA#1.0");
+        String key = cache.getKey("org.acme.Foo", classBytes, hooks);
+        assertFalse(key.equals(cache.getKey("org.acme.Foo", new byte[] { 1, 2, 4 }, hooks)));
+        assertFalse(key.equals(cache.getKey("org.acme.Bar", classBytes, hooks)));
+        assertFalse(key.equals(cache.getKey("org.acme.Foo", classBytes, Collections.singletonList("org.acme.TracingHook@org.acme:1.1.0"))));
+        assertFalse(key.equals(cache.getKey("org.acme.Foo", classBytes, Collections.<String>emptyList())));
+        assertFalse(key.equals(new WovenClassCache(storageDir, "locA#1.1").getKey("org.acme.Foo", classBytes, hooks)));
+        assertEquals(key, cache.getKey("org.acme.Foo", classBytes, hooks));
+    }
+}
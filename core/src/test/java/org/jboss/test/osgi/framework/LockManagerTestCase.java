@@ -237,6 +237,41 @@ public class LockManagerTestCase {
         Assert.assertEquals("taskB unlocked last", "Unlocked: (START) [[item0]]", messages.get(8));
     }
 
+    @Test
+    public void testLockManagerOpposingOrder() throws Exception {
+
+        // Two tasks that lock the same items in opposite order must not deadlock
+        final int iterations = 200;
+        final CountDownLatch latch = new CountDownLatch(2);
+        final LockableItem[][] orders = new LockableItem[][] { { items[0], items[1], items[2] }, { items[2], items[1], items[0] } };
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for (final LockableItem[] order : orders) {
+            Runnable runner = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            LockContext context = lockManager.lockItems(Method.START, 5, TimeUnit.SECONDS, order);
+                            lockManager.unlockItems(context);
+                        }
+                    } catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            };
+            executor.execute(runner);
+        }
+        Assert.assertTrue("Tasks completed", latch.await(30, TimeUnit.SECONDS));
+        Assert.assertTrue("No errors: " + errors, errors.isEmpty());
+        for (TestItem item : items) {
+            Assert.assertFalse("Unlocked: " + item, item.itemLock.isLocked());
+        }
+    }
+
     class DelegatingLockManager implements LockManager {
         private LockManager delegate = new LockManagerImpl();
 
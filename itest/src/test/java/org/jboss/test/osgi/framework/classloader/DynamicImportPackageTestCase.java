@@ -400,6 +400,89 @@ public class DynamicImportPackageTestCase extends OSGiFrameworkTest {
         bundleC.uninstall();
     }
 
+    @Test
+    public void testResolveOnlyUnresolvedExporter() throws Exception {
+
+        // Bundle-SymbolicName: dynamic-exporter-a
+        // DynamicImport-Package: org.jboss.test.osgi.framework.classloader.support.c
+        final JavaArchive archiveA = ShrinkWrap.create(JavaArchive.class, "dynamic-exporter-a");
+        archiveA.addClass(A.class);
+        archiveA.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archiveA.getName());
+                builder.addDynamicImportPackages(C.class.getPackage().getName());
+                return builder.openStream();
+            }
+        });
+
+        // Bundle-SymbolicName: dynamic-exporter-c
+        // Export-Package: org.jboss.test.osgi.framework.classloader.support.c
+        final JavaArchive archiveC = ShrinkWrap.create(JavaArchive.class, "dynamic-exporter-c");
+        archiveC.addClasses(C.class);
+        archiveC.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archiveC.getName());
+                builder.addExportPackages(C.class.getPackage().getName());
+                return builder.openStream();
+            }
+        });
+
+        // Bundle-SymbolicName: dynamic-exporter-broken
+        // Import-Package: org.jboss.test.osgi.framework.classloader.support.missing
+        final JavaArchive archiveX = ShrinkWrap.create(JavaArchive.class, "dynamic-exporter-broken");
+        archiveX.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archiveX.getName());
+                builder.addImportPackages("org.jboss.test.osgi.framework.classloader.support.missing");
+                return builder.openStream();
+            }
+        });
+
+        // Bundle-SymbolicName: dynamic-exporter-b
+        // Export-Package: org.jboss.test.osgi.framework.classloader.support.b
+        final JavaArchive archiveB = ShrinkWrap.create(JavaArchive.class, "dynamic-exporter-b");
+        archiveB.addClasses(B.class);
+        archiveB.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archiveB.getName());
+                builder.addExportPackages(B.class.getPackage().getName());
+                return builder.openStream();
+            }
+        });
+
+        Bundle bundleA = installBundle(archiveA);
+        try {
+            Bundle bundleC = installBundle(archiveC);
+            try {
+                Bundle bundleX = installBundle(archiveX);
+                Bundle bundleB = installBundle(archiveB);
+                try {
+                    assertLoadClass(bundleA, C.class.getName(), bundleC);
+
+                    // Only the exporter of the dynamically imported package gets resolved
+                    assertBundleState(Bundle.RESOLVED, bundleC.getState());
+                    assertBundleState(Bundle.INSTALLED, bundleX.getState());
+                    assertBundleState(Bundle.INSTALLED, bundleB.getState());
+                } finally {
+                    bundleB.uninstall();
+                    bundleX.uninstall();
+                }
+            } finally {
+                bundleC.uninstall();
+            }
+        } finally {
+            bundleA.uninstall();
+        }
+    }
+
     @Test
     public void testResourceLookupNoPath() throws Exception {
         final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "resource-no-path");